@@ -26,6 +26,15 @@ public class AppFrame extends JFrame {
 	 * Construit la fenetre principale et y ajoute les éléments visuelles nécessaire.
 	 */
     public AppFrame(){
+    	this(null, false);
+    }
+
+	/**
+	 * Construit la fenetre principale dont l'occupation est partagée avec les autres processus de la machine.
+	 * @param sharedFile Le fichier de l'occupation partagée, ou null.
+	 * @param cooperative Vrai pour planifier les véhicules de façon coopérative.
+	 */
+    public AppFrame(String sharedFile, boolean cooperative){
         /* Abres de la structure
         -frame
             -outer
@@ -46,7 +55,7 @@ public class AppFrame extends JFrame {
         topPanel.setBackground(Color.WHITE);	
 	    topPanel.setBorder(BorderFactory.createEmptyBorder(10, 0, 10, 0));
 
-        MapFrame parkingFrame = new MapFrame();	
+        MapFrame parkingFrame = new MapFrame(sharedFile, cooperative);	
         topPanel.add(parkingFrame);
 
         //Intitialisation de "BottomPanel"
@@ -1,15 +1,17 @@
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.Point;
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.awt.Color;
 import javax.swing.JPanel;
 
 import com.coggers.parking.Cell;
 import com.coggers.parking.Grid;
+import com.coggers.parking.MapLoader;
+import com.coggers.parking.OccupancyStore;
 import com.coggers.parking.Road;
+import com.coggers.parking.SharedOccupancy;
 
 /**
  * La classe décrivant l'agencement de la carte visuel.
@@ -23,16 +25,33 @@ public class MapFrame extends JPanel {
 	private static final long serialVersionUID = 3697766966396676042L;
 	private Grid grid;
 	private JPanel container;
+	private OccupancyStore occupancyStore;
+	private SharedOccupancy sharedOccupancy;
 	
 	/**
 	 * Construit la carte visuel et y ajoute les éléments visuelles nécessaire.
 	 */
 	public MapFrame() {
+		this(null, false);
+	}
+	
+	/**
+	 * Construit la carte visuel dont l'occupation est partagée avec les autres processus de la machine.
+	 * @param sharedFile Le fichier de l'occupation partagée, ou null.
+	 * @param cooperative Vrai pour planifier les véhicules autour des véhicules déjà en route.
+	 */
+	public MapFrame(String sharedFile, boolean cooperative) {
 		int gridWidth = 400;
 		int gridHeight = 400;
 		
 		int map[][] = this.buildMap();
 		grid = new Grid(gridWidth, gridHeight, map);
+		this.loadTrafficProfiles();
+		this.restoreOccupancy();
+		if (sharedFile != null) {
+			this.shareOccupancy(sharedFile);
+		}
+		grid.setCooperativeRouting(cooperative);
 		
 		container = new JPanel(new BorderLayout());
 		container.setPreferredSize(new Dimension(gridWidth, gridHeight));
@@ -75,40 +94,61 @@ public class MapFrame extends JPanel {
 		grid.stopSearch(mapPanel);
 	}
 	
+	/**
+	 * Lit le fichier optionnel des profils de trafic et les assigne aux routes de la grille.
+	 */
+	private void loadTrafficProfiles() {
+		MapLoader.readTrafficProfiles(MapFrame.class.getResourceAsStream("maps/traffic.txt"), grid);
+	}
+	
+	/**
+	 * Restaure l'état d'occupation des espaces de stationnement sauvegardé lors de la dernière exécution.
+	 * Sans état sauvegardé, la grille conserve les valeurs de la carte.
+	 */
+	private void restoreOccupancy() {
+		try {
+			occupancyStore = OccupancyStore.open(Paths.get("data"), grid);
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				public void run() {
+					try {
+						occupancyStore.close();
+					} catch (IOException e) {
+						System.out.println("Occupancy could not be saved.");
+					}
+				}
+			}));
+		} catch (IOException e) {
+			System.out.println("Occupancy could not be restored: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Partage l'occupation de la grille par un fichier projeté en mémoire; les réservations de la borne
+	 * deviennent exclusives pour tous les processus qui partagent le fichier.
+	 * @param sharedFile Le fichier de l'occupation partagée.
+	 */
+	private void shareOccupancy(String sharedFile) {
+		try {
+			sharedOccupancy = SharedOccupancy.open(Paths.get(sharedFile), grid);
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				public void run() {
+					try {
+						sharedOccupancy.close();
+					} catch (IOException e) {
+						System.out.println("Shared occupancy could not be closed.");
+					}
+				}
+			}));
+		} catch (IOException e) {
+			System.out.println("Occupancy could not be shared: " + e.getMessage());
+		}
+	}
+	
 	/**
 	 * Lit un fichier externe et construit la représentation d'une carte à l'aide d'une matrice.
 	 * @return Une matrice d'entiers
 	 */
 	private int[][] buildMap() {
-		ArrayList<int[]> mapList = new ArrayList<int[]>();
-		
-		InputStream mapInput = MapFrame.class.getResourceAsStream("maps/map.txt");
-		Scanner reader = new Scanner(mapInput);
-		
-		try {
-			while (reader.hasNextLine()) {
-				String data = reader.nextLine();
-				String tokens[] = data.split(", ");
-				int numbers[] = new int[tokens.length];
-			
-			    for (int i = 0; i < tokens.length; i++) {
-			        numbers[i] = Integer.parseInt(tokens[i]);
-			    }
-			
-			    mapList.add(numbers);
-			}
-	     
-			reader.close();
-	     
-			int map[][] = new int[mapList.size()][mapList.get(0).length];
-			for (int i = 0; i < mapList.size(); i++) {
-				map[i] = mapList.get(i);
-			}
-			
-			return map;
-		}  catch (IllegalStateException e) {
-	      System.out.println("Map could not be read.");
-	      return new int[0][0];
-	    }
+		return MapLoader.readMap(MapFrame.class.getResourceAsStream("maps/map.txt"));
 	}
 }
\ No newline at end of file
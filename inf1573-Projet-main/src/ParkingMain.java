@@ -1,9 +1,23 @@
 import javax.swing.SwingUtilities;
 import java.awt.Dimension;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.nio.file.Paths;
 
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 
+import com.coggers.parking.Garage;
+import com.coggers.parking.Grid;
+import com.coggers.parking.MapLoader;
+import com.coggers.parking.OccupancyStore;
+import com.coggers.parking.ParkingServer;
+import com.coggers.parking.SearchEngines;
+import com.coggers.parking.SharedOccupancy;
+import com.coggers.parking.TraceRecorder;
+
 /**
  * La fenêtre principale du programme.
  * @author Jacob Chapman
@@ -16,11 +30,58 @@ public class ParkingMain {
 	
 	/**
 	 * instancie la classe principale et configure les proprietes importante
+	 * L'option --server [port] [--trace fichier] [--shared fichier] [--garage [fichier]] démarre le service HTTP
+	 * local sans interface graphique, enregistre au besoin une trace des requêtes pour TraceReplay, partage au besoin
+	 * l'occupation avec les autres instances de la machine par un fichier projeté en mémoire et sert au besoin
+	 * un garage à plusieurs étages (par défaut maps/garage.txt).
+	 * Sans --server, l'option --shared fichier fait partager l'occupation de l'interface graphique (une borne)
+	 * avec les services et les autres bornes de la machine, et l'option --cooperative planifie chaque véhicule
+	 * autour des véhicules déjà en route.
 	 */
 	public static void main(String[] args) {
+		// Un moteur de recherche mal nommé arrête le programme avant l'ouverture de la carte
+		try {
+			SearchEngines.getConfiguredName();
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.exit(1);
+		}
+		
+		if (args.length > 0 && args[0].equals("--server")) {
+			int port = 8080;
+			String trace = null;
+			String shared = null;
+			String garage = null;
+			for (int i = 1; i < args.length; i++) {
+				if (args[i].equals("--trace") && i + 1 < args.length) {
+					trace = args[++i];
+				} else if (args[i].equals("--shared") && i + 1 < args.length) {
+					shared = args[++i];
+				} else if (args[i].equals("--garage")) {
+					garage = i + 1 < args.length && !args[i + 1].startsWith("--") ? args[++i] : "";
+				} else {
+					port = Integer.parseInt(args[i]);
+				}
+			}
+			startServer(port, trace, shared, garage);
+			return;
+		}
+		
+		String shared = null;
+		boolean cooperative = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--shared") && i + 1 < args.length) {
+				shared = args[++i];
+			} else if (args[i].equals("--cooperative")) {
+				cooperative = true;
+			}
+		}
+		String sharedFile = shared;
+		boolean cooperativeRouting = cooperative;
+		
 		SwingUtilities.invokeLater(new Runnable() {
 	        public void run() {
-				AppFrame app = new AppFrame();
+				AppFrame app = new AppFrame(sharedFile, cooperativeRouting);
 
 				app.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 				app.setTitle("Smart Parking Version 0.1.0");
@@ -35,5 +96,76 @@ public class ParkingMain {
 		
 	}
 	
+	/**
+	 * Démarre le service HTTP local sur la carte par défaut, sans interface graphique.
+	 * @param port Le port d'écoute.
+	 * @param trace Le fichier de la trace des requêtes, ou null.
+	 * @param shared Le fichier de l'occupation partagée, ou null.
+	 * @param garage Le fichier des étages du garage, une chaîne vide pour le garage par défaut, ou null.
+	 */
+	private static void startServer(int port, String trace, String shared, String garage) {
+		System.setProperty("java.awt.headless", "true");
+		
+		int map[][] = MapLoader.readMap(ParkingMain.class.getResourceAsStream("maps/map.txt"));
+		
+		// Sans affichage, chaque noeud mesure un pixel
+		Grid grid = new Grid(map[0].length, map.length, map);
+		MapLoader.readTrafficProfiles(ParkingMain.class.getResourceAsStream("maps/traffic.txt"), grid);
+		
+		try {
+			OccupancyStore occupancyStore = OccupancyStore.open(Paths.get("data"), grid);
+			SharedOccupancy sharedOccupancy = shared != null ? SharedOccupancy.open(Paths.get(shared), grid) : null;
+			TraceRecorder traceRecorder = trace != null ? new TraceRecorder(Paths.get(trace), grid) : null;
+			Garage floors = garage != null ? openGarage(garage) : null;
+			ParkingServer server = new ParkingServer(grid, port);
+			server.setGarage(floors);
+			
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				public void run() {
+					server.stop();
+					if (floors != null) {
+						floors.close();
+					}
+					try {
+						if (traceRecorder != null) {
+							traceRecorder.close();
+						}
+						if (sharedOccupancy != null) {
+							sharedOccupancy.close();
+						}
+						occupancyStore.close();
+					} catch (IOException e) {
+						System.out.println("Occupancy could not be saved.");
+					}
+				}
+			}));
+			
+			server.start();
+			System.out.println("Parking server listening on " + server.getAddress());
+		} catch (IOException e) {
+			System.out.println("Server could not be started: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Charge les étages d'un garage, sans affichage.
+	 * @param file Le fichier des étages, ou une chaîne vide pour le garage par défaut.
+	 * @return Le garage.
+	 * @throws IOException Si le fichier ne peut pas être lu.
+	 */
+	private static Garage openGarage(String file) throws IOException {
+		List<int[][]> floors;
+		if (file.isEmpty()) {
+			floors = MapLoader.readFloors(ParkingMain.class.getResourceAsStream("maps/garage.txt"));
+		} else {
+			try (InputStream input = new FileInputStream(file)) {
+				floors = MapLoader.readFloors(input);
+			}
+		}
+		if (floors.isEmpty()) {
+			throw new IOException("Le garage n'a aucun étage");
+		}
+		return new Garage(floors.get(0)[0].length, floors.get(0).length, floors);
+	}
+	
 }
-
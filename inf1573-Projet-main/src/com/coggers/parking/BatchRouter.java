@@ -0,0 +1,177 @@
+package com.coggers.parking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Répond à plusieurs recherches d'espace libre en un seul calcul.
+ * Plutôt que de lancer une recherche par noeud de départ, une seule recherche inversée part
+ * simultanément de tous les espaces libres en suivant les arêtes à rebours. La distance obtenue pour
+ * chaque noeud est celle de l'espace libre le plus proche, et le successeur de chaque noeud donne le
+ * trajet. La recherche s'arrête dès que tous les noeuds de départ distincts sont atteints.
+ * Les coûts utilisés sont ceux de l'intervalle de la journée du départ pour tout le trajet.
+ * Une instance n'est pas réentrante: un seul fil d'exécution peut l'utiliser à la fois.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+class BatchRouter {
+	private Grid grid;
+
+	// Arêtes entrantes de chaque noeud, regroupées par destination
+	private int[] reverseStart;
+	private int[] reverseSource;
+	private Edge[] reverseEdge;
+
+	private BucketQueue openList;
+	private long[] distanceToSpot;
+	private int[] successor;
+	private int[] searchStamp;
+	private int[] originStamp;
+	private int currentSearch;
+
+	/**
+	 * Construit le graphe inversé de la grille. La topologie des arêtes ne change pas après
+	 * la construction de la grille; seuls leurs coûts changent et ils sont lus à chaque recherche.
+	 * @param grid La grille.
+	 */
+	BatchRouter(Grid grid) {
+		this.grid = grid;
+
+		int cellCount = grid.getRows() * grid.getColumns();
+		this.reverseStart = new int[cellCount + 1];
+		for (int i = 0; i < cellCount; i++) {
+			for (Edge e : grid.getCell(i).getEdges()) {
+				reverseStart[e.getDestination().getIndex() + 1]++;
+			}
+		}
+		for (int i = 0; i < cellCount; i++) {
+			reverseStart[i + 1] += reverseStart[i];
+		}
+
+		int[] fill = Arrays.copyOf(reverseStart, cellCount);
+		this.reverseSource = new int[reverseStart[cellCount]];
+		this.reverseEdge = new Edge[reverseStart[cellCount]];
+		for (int i = 0; i < cellCount; i++) {
+			for (Edge e : grid.getCell(i).getEdges()) {
+				int position = fill[e.getDestination().getIndex()]++;
+				reverseSource[position] = i;
+				reverseEdge[position] = e;
+			}
+		}
+
+		this.distanceToSpot = new long[cellCount];
+		this.successor = new int[cellCount];
+		this.searchStamp = new int[cellCount];
+		this.originStamp = new int[cellCount];
+		this.openList = new BucketQueue(grid.getMaxEdgeCost(), grid.getCostUnit());
+	}
+
+	/**
+	 * Trouve le trajet vers l'espace libre le plus proche pour chaque noeud de départ.
+	 * @param starts Les noeuds de départ (les doublons partagent le même trajet).
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @return Les trajets dans l'ordre des noeuds de départ; null pour un départ sans espace accessible.
+	 */
+	List<Route> findRoutes(List<Cell> starts, int departureSecond) {
+		this.beginSearch();
+		int slot = TrafficProfile.slotAt(departureSecond);
+
+		// Marque les noeuds de départ distincts
+		int remaining = 0;
+		for (Cell start : starts) {
+			if (start instanceof Road && originStamp[start.getIndex()] != currentSearch) {
+				originStamp[start.getIndex()] = currentSearch;
+				remaining++;
+			}
+		}
+
+		// Tous les espaces libres sont des sources à distance nulle
+		int cellCount = distanceToSpot.length;
+		for (int i = 0; i < cellCount && remaining > 0; i++) {
+			Cell cell = grid.getCell(i);
+			if (cell instanceof Spot && ((Spot) cell).getStatus() == Status.FREE) {
+				this.visit(i, 0, -1);
+				openList.add(i, 0);
+			}
+		}
+
+		while (!openList.isEmpty() && remaining > 0) {
+			int current = openList.poll();
+			long distance = openList.currentDistance();
+			if (distance != distanceToSpot[current]) {
+				continue;
+			}
+
+			if (originStamp[current] == currentSearch) {
+				remaining--;
+			}
+
+			for (int k = reverseStart[current]; k < reverseStart[current + 1]; k++) {
+				int source = reverseSource[k];
+				long candidate = distance + reverseEdge[k].getCost(slot);
+				if (searchStamp[source] != currentSearch || candidate < distanceToSpot[source]) {
+					this.visit(source, candidate, current);
+					openList.add(source, candidate);
+				}
+			}
+		}
+
+		// Les doublons partagent la même instance de trajet
+		Map<Cell, Route> routes = new IdentityHashMap<Cell, Route>();
+		List<Route> result = new ArrayList<Route>(starts.size());
+		for (Cell start : starts) {
+			Route route = routes.get(start);
+			if (route == null && start instanceof Road && searchStamp[start.getIndex()] == currentSearch) {
+				route = this.buildRoute(start.getIndex());
+				routes.put(start, route);
+			}
+			result.add(route);
+		}
+		return result;
+	}
+
+	/**
+	 * Invalide les métriques de la recherche précédente.
+	 */
+	private void beginSearch() {
+		currentSearch++;
+		if (currentSearch == 0) {
+			Arrays.fill(searchStamp, 0);
+			Arrays.fill(originStamp, 0);
+			currentSearch = 1;
+		}
+		openList.clear(grid.getMaxEdgeCost(), grid.getCostUnit());
+	}
+
+	private void visit(int node, long distance, int next) {
+		searchStamp[node] = currentSearch;
+		distanceToSpot[node] = distance;
+		successor[node] = next;
+	}
+
+	/**
+	 * Construit le trajet d'un noeud de départ en suivant les successeurs jusqu'à l'espace libre.
+	 */
+	private Route buildRoute(int start) {
+		int length = 1;
+		for (int current = start; successor[current] >= 0; current = successor[current]) {
+			length++;
+		}
+
+		int[] path = new int[length];
+		int current = start;
+		for (int i = 0; i < length; i++) {
+			path[i] = current;
+			current = successor[current];
+		}
+		return new Route(grid, path, distanceToSpot[start]);
+	}
+}
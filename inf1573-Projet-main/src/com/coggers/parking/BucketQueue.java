@@ -0,0 +1,148 @@
+package com.coggers.parking;
+
+import java.util.Arrays;
+
+/**
+ * Une file de priorité à compartiments (algorithme de Dial) pour des distances entières.
+ * Les coûts des arêtes sont bornés et sont des multiples d'une unité commune: les distances
+ * en attente tiennent donc dans une fenêtre de (coût maximal / unité + 1) compartiments circulaires.
+ * L'ajout se fait en temps constant et le retrait parcourt au plus la fenêtre, sans aucune comparaison.
+ * Un noeud amélioré est simplement ajouté de nouveau; l'appelant ignore les entrées périmées.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+class BucketQueue {
+	private int unit;
+	private int[][] buckets;
+	private int[] sizes;
+	private long current;
+	private long highest;
+	private int count;
+	private boolean anchored;
+
+	/**
+	 * Construit une file vide.
+	 * @param maxCost Le coût maximal d'une arête.
+	 * @param unit Une unité qui divise tous les coûts (au moins 1).
+	 */
+	BucketQueue(long maxCost, int unit) {
+		this.unit = Math.max(1, unit);
+		int bucketCount = (int) (maxCost / this.unit) + 1;
+		this.buckets = new int[bucketCount][];
+		this.sizes = new int[bucketCount];
+	}
+
+	/**
+	 * Vide la file et ajuste sa fenêtre aux coûts courants du graphe.
+	 * @param maxCost Le coût maximal d'une arête.
+	 * @param unit Une unité qui divise tous les coûts (au moins 1).
+	 */
+	void clear(long maxCost, int unit) {
+		unit = Math.max(1, unit);
+		int bucketCount = (int) (maxCost / unit) + 1;
+		if (unit != this.unit || bucketCount > buckets.length) {
+			this.unit = unit;
+			this.buckets = new int[Math.max(bucketCount, buckets.length)][];
+			this.sizes = new int[buckets.length];
+		} else if (count > 0) {
+			Arrays.fill(sizes, 0);
+		}
+		this.count = 0;
+		this.current = 0;
+		this.anchored = false;
+	}
+
+	/**
+	 * Indique si la file est vide.
+	 * @return Vrai si aucun noeud n'est en attente.
+	 */
+	boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * Ajoute un noeud à la file.
+	 * @param node L'indice du noeud.
+	 * @param distance La distance provisoire du noeud, multiple de l'unité.
+	 */
+	void add(int node, long distance) {
+		long key = distance / unit;
+		if (!anchored) {
+			// La fenêtre commence à la distance du premier noeud ajouté depuis la remise à zéro
+			current = key;
+			highest = key;
+			anchored = true;
+		} else if (key < current) {
+			// Seule une recherche à sources multiples ajoute des distances inférieures au minimum courant.
+			// La position d'une entrée ne dépend que de sa clé: il suffit que la fenêtre couvre les clés en attente.
+			if (highest - key >= buckets.length) {
+				grow(highest - key + 1);
+			}
+			current = key;
+		} else if (key - current >= buckets.length) {
+			grow(key - current + 1);
+		}
+		highest = Math.max(highest, key);
+
+		int position = (int) (key % buckets.length);
+		int[] bucket = buckets[position];
+		if (bucket == null) {
+			bucket = buckets[position] = new int[4];
+		} else if (sizes[position] == bucket.length) {
+			bucket = buckets[position] = Arrays.copyOf(bucket, bucket.length * 2);
+		}
+		bucket[sizes[position]++] = node;
+		count++;
+	}
+
+	/**
+	 * Retire un noeud ayant la plus petite distance.
+	 * @return L'indice du noeud.
+	 */
+	int poll() {
+		int position = (int) (current % buckets.length);
+		while (sizes[position] == 0) {
+			current++;
+			position = (int) (current % buckets.length);
+		}
+		count--;
+		return buckets[position][--sizes[position]];
+	}
+
+	/**
+	 * Retourne la distance du dernier noeud retiré.
+	 * @return La distance courante de la file.
+	 */
+	long currentDistance() {
+		return current * unit;
+	}
+
+	/**
+	 * Élargit la fenêtre de la file pour contenir au moins le nombre de compartiments demandé.
+	 */
+	private void grow(long required) {
+		int bucketCount = buckets.length;
+		while (bucketCount < required) {
+			bucketCount *= 2;
+		}
+
+		int[][] previousBuckets = buckets;
+		int[] previousSizes = sizes;
+		buckets = new int[bucketCount][];
+		sizes = new int[bucketCount];
+
+		// Chaque entrée conserve sa clé: la clé est retrouvée à partir de la position dans l'ancienne fenêtre
+		for (int offset = 0; offset < previousBuckets.length; offset++) {
+			long key = current + offset;
+			int from = (int) (key % previousBuckets.length);
+			if (previousSizes[from] > 0) {
+				int to = (int) (key % bucketCount);
+				buckets[to] = previousBuckets[from];
+				sizes[to] = previousSizes[from];
+			}
+		}
+	}
+}
@@ -1,27 +1,25 @@
 package com.coggers.parking;
 
 import java.awt.Color;
-import java.awt.Graphics;
 import java.awt.Point;
 import java.util.ArrayList;
 
 /**
  * Une représentation visuelle d'un noeud d'un graphe pouvant être dessiné sur une grille.
- * Le noeud contient les attributs nécessaire pour permettre la recherche
- * du plus court chemin par l'algorithme de Dijkstra.
+ * Le noeud est identifié par un indice unique dans la grille, utilisé par l'algorithme de
+ * Dijkstra pour conserver ses métriques de recherche.
  * @author Jacob Chapman
  * @author William McAllister
  * @author Jean-Francois Morel
  * @author Jean Vézina
  * @version 1.0
  */
-public class Cell implements Comparable<Cell> {
+public class Cell {
 	private Point position;
 	private int width;
 	private int height;
-	private Color color;
-	private double distanceFromStart;
-	private Cell predecessor;
+	private volatile Color color;
+	private int index;
 	private ArrayList<Edge> edges;
 
 	/**
@@ -35,7 +33,6 @@ public class Cell implements Comparable<Cell> {
 		this.width = width;
 		this.height = height;
 		this.color = Color.WHITE;
-		this.distanceFromStart = Double.POSITIVE_INFINITY;
 		this.edges = new ArrayList<Edge>();
 	}
 
@@ -80,65 +77,43 @@ public class Cell implements Comparable<Cell> {
 	}
 	
 	/**
-	 * Retourne toutes les arêtes accessibles à partir de ce noeud.
-	 * @return edges La liste des arêtes accessibles.
-	 */	
-	public ArrayList<Edge> getEdges() {
-		return this.edges;
-	}
-	
-	/**
-	 * Retourne la distance de ce noeud par rapport au noeud de départ.
-	 * @return distanceFromStart La distance du noeud par rapport au noeud de départ.
-	 */
-	public double getDistanceFromStart() {
-		return this.distanceFromStart;
-	}
-	
-	/**
-	 * Assigne la distance de ce noeud par rapport au noeud de départ.
-	 * @param distanceFromStart La distance du noeud par rapport au noeud de départ.
-	 */
-	public void setDistanceFromStart(double distanceFromStart) {
-		this.distanceFromStart = distanceFromStart;
-	}
-	
-	/**
-	 * Réinitialise la valeur par défaut de la distance de ce noeud par rapport au noeud de départ.
+	 * Retourne l'indice de la rangée du noeud dans la grille.
+	 * @return L'indice de la rangée du noeud.
 	 */
-	private void clearDistanceFromOrigin() {
-		this.distanceFromStart = Double.POSITIVE_INFINITY;
+	public int getRow() {
+		return position.y / height;
 	}
 	
 	/**
-	 * Retourne le prédécesseur de ce noeud.
-	 * @return predecessor Le prédécesseur de ce noeud.
+	 * Retourne l'indice de la colonne du noeud dans la grille.
+	 * @return L'indice de la colonne du noeud.
 	 */
-	public Cell getPredecessor() {
-		return this.predecessor;
+	public int getColumn() {
+		return position.x / width;
 	}
 	
 	/**
-	 * Assigne le prédécesseur de ce noeud.
-	 * @param predecessor Le prédécesseur de ce noeud.
-	 */
-	public void setPredecessor(Cell predecessor) {
-		this.predecessor = predecessor;
+	 * Retourne toutes les arêtes accessibles à partir de ce noeud.
+	 * @return edges La liste des arêtes accessibles.
+	 */	
+	public ArrayList<Edge> getEdges() {
+		return this.edges;
 	}
 	
 	/**
-	 * Supprime la référence du prédécesseur de ce noeud.
+	 * Retourne l'indice de ce noeud dans la grille (rangée * colonnes + colonne).
+	 * @return index L'indice du noeud.
 	 */
-	private void clearPredecessor() {
-		this.predecessor = null;
+	public int getIndex() {
+		return this.index;
 	}
 	
 	/**
-	 * Réinitialise toutes les données reliées à la recherche de chemin du noeud.
+	 * Assigne l'indice de ce noeud dans la grille.
+	 * @param index L'indice du noeud.
 	 */
-	public void clearPathfindingMetrics() {
-		this.clearDistanceFromOrigin();
-		this.clearPredecessor();
+	void setIndex(int index) {
+		this.index = index;
 	}
 	
 	/**
@@ -149,28 +124,6 @@ public class Cell implements Comparable<Cell> {
 		this.edges.add(edge);		
 	}
 	
-	/**
-	 * Dessine un noeud dans une composante Swing.
-	 * @param g Un objet de type Graphics.
-	 */
-	public void draw(Graphics g) {
-		g.setColor(color);
-		g.fillRect(position.x, position.y, width, height);
-		g.setColor(Color.BLACK);
-		g.drawRect(position.x, position.y, width, height);
-	}
-
-	@Override
-	/**
-	 * Compare deux noeuds.
-	 * Cette méthode permet d'ajouter des objets de type Cell à une liste de type PriorityQueue.
-	 * @param o Le noeud à comparer avec ce noeud. 
-	 * @return Le résultat de la comparaison (-1, 0, 1).
-	 **/
-	public int compareTo(Cell o) {
-		return Double.compare(distanceFromStart, o.distanceFromStart);
-	}
-	
 	@Override
 	/**
 	 * Convertit l'objet noeud en une chaîne de caratères.  
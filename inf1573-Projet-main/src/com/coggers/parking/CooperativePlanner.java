@@ -0,0 +1,376 @@
+package com.coggers.parking;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Planifie les trajets de plusieurs véhicules qui circulent en même temps sans qu'ils ne se croisent.
+ * Chaque trajet planifié réserve, dans une table espace-temps, le noeud occupé par le véhicule à chaque
+ * pas de la simulation; les véhicules suivants sont planifiés autour de ces réservations
+ * (planification coopérative par priorité, de type Cooperative A*).
+ * <p>
+ * La recherche porte sur des états (noeud, pas de temps). Un déplacement vers un voisin coûte le coût
+ * de l'arête et prend un pas; il est interdit si le voisin est réservé au pas suivant ou si le véhicule
+ * qui l'occupe vient vers le noeud courant (croisement). Attendre sur place coûte, par pas, l'arête sortante
+ * la moins chère vers une route; l'attente n'est envisagée que devant un déplacement interdit, ce qui garde
+ * la recherche aussi petite que celle de Pathfinder lorsqu'il n'y a pas de conflit. Une arrivée tardive à un
+ * noeud déjà atteint plus tôt est ignorée lorsque l'attente sur place depuis l'arrivée précédente
+ * aurait coûté moins cher, et au plus quatre arrivées sont explorées par noeud: dans un trafic dense,
+ * la recherche reste proportionnelle à la portion de la grille parcourue plutôt qu'au nombre de pas.
+ * <p>
+ * Dans le trajet obtenu, un noeud répété est un pas d'attente: le trajet se parcourt à raison d'un noeud
+ * par pas de temps. Les coûts utilisés sont ceux de l'intervalle de la journée du départ.
+ * Le noeud de départ est vérifié comme toute autre étape: s'il est réservé au pas demandé, le départ est
+ * retardé au premier pas où il est libre (voir getStartTick). Chaque trajet ne retire à sa libération
+ * que ses propres réservations.
+ * Les pas de temps sont comptés à partir d'une origine fixée à la construction: comptés depuis 1970,
+ * ils dépasseraient la capacité d'un int.
+ * Les méthodes sont synchronisées: les véhicules sont planifiés un à la fois.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class CooperativePlanner {
+	private static final int MAX_ARRIVALS = 4;
+
+	private Grid grid;
+	private int horizon;
+	private long epochMillis;
+	private ReservationTable reservations;
+	private int nextOwner;
+
+	// Propriétaire et pas de départ de chaque trajet planifié et pas encore libéré
+	private Map<Route, int[]> planned;
+
+	// États de la recherche courante et leur numéro, par paire (noeud, pas de temps)
+	private ReservationTable stateNumbers;
+	private BucketQueue openList;
+	private int[] stateCell;
+	private int[] stateTick;
+	private int[] stateParent;
+	private long[] stateCost;
+	private int stateCount;
+
+	// Dernière arrivée explorée de la recherche courante à chaque noeud, et nombre d'arrivées explorées
+	private int[] arrivalTick;
+	private long[] arrivalCost;
+	private int[] arrivalCount;
+	private int[] arrivalStamp;
+	private int currentSearch;
+
+	/**
+	 * Construit un planificateur sans réservation dont le pas 0 commence à l'instant 0.
+	 * @param grid La grille.
+	 * @param horizon Le nombre maximal de pas d'un trajet.
+	 */
+	public CooperativePlanner(Grid grid, int horizon) {
+		this(grid, horizon, 0);
+	}
+
+	/**
+	 * Construit un planificateur sans réservation.
+	 * @param grid La grille.
+	 * @param horizon Le nombre maximal de pas d'un trajet.
+	 * @param epochMillis L'instant du début du pas 0, en millisecondes.
+	 */
+	public CooperativePlanner(Grid grid, int horizon, long epochMillis) {
+		if (horizon < 1) {
+			throw new IllegalArgumentException("Horizon de planification invalide: " + horizon);
+		}
+		this.grid = grid;
+		this.horizon = horizon;
+		this.epochMillis = epochMillis;
+		this.reservations = new ReservationTable(1 << 12);
+		this.planned = new HashMap<Route, int[]>();
+		this.stateNumbers = new ReservationTable(1 << 12);
+		this.openList = new BucketQueue(grid.getMaxEdgeCost(), grid.getCostUnit());
+
+		int cellCount = grid.getRows() * grid.getColumns();
+		this.arrivalTick = new int[cellCount];
+		this.arrivalCost = new long[cellCount];
+		this.arrivalCount = new int[cellCount];
+		this.arrivalStamp = new int[cellCount];
+		this.stateCell = new int[1024];
+		this.stateTick = new int[1024];
+		this.stateParent = new int[1024];
+		this.stateCost = new long[1024];
+	}
+
+	/**
+	 * Planifie le trajet d'un véhicule vers l'espace libre le plus proche, le réserve et réserve
+	 * le noeud occupé par le véhicule à chaque pas du trajet.
+	 * @param start Le noeud de départ.
+	 * @param startTick Le premier pas de temps du départ; le véhicule est au noeud de départ à ce pas,
+	 * ou au premier pas suivant où le noeud n'est pas réservé.
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @return Le trajet, un noeud par pas de temps à partir de getStartTick, ou null si aucun espace
+	 * n'est accessible dans l'horizon.
+	 */
+	public synchronized Route plan(Cell start, int startTick, int departureSecond) {
+		if (!(start instanceof Road)) {
+			return null;
+		}
+
+		// Un véhicule déjà au noeud de départ, ou qui y passe, retarde l'entrée du suivant
+		int departure = startTick;
+		while (reservations.owner(start.getIndex(), departure) >= 0) {
+			if (++departure - startTick >= horizon) {
+				return null;
+			}
+		}
+
+		int slot = TrafficProfile.slotAt(departureSecond);
+		int owner = nextOwner;
+		nextOwner = (nextOwner + 1) & Integer.MAX_VALUE;
+		this.beginSearch();
+		this.relax(start.getIndex(), departure, 0, -1);
+
+		while (!openList.isEmpty()) {
+			int state = openList.poll();
+			long cost = openList.currentDistance();
+			if (cost != stateCost[state]) {
+				continue;
+			}
+
+			int current = stateCell[state];
+			int tick = stateTick[state];
+			Cell cell = grid.getCell(current);
+			if (stateParent[state] < 0 || stateCell[stateParent[state]] != current) {
+				if (this.isLateArrival(cell, tick, cost, slot)) {
+					continue;
+				}
+			}
+
+			if (cell instanceof Spot) {
+				// Un autre conducteur a pu prendre l'espace depuis qu'il a été atteint
+				if (grid.reserveSpot((Spot) cell)) {
+					return this.commit(state, owner, departure);
+				}
+				continue;
+			}
+			if (tick - departure >= horizon) {
+				continue;
+			}
+
+			boolean blocked = false;
+			for (Edge e : cell.getEdges()) {
+				Cell next = e.getDestination();
+				if (next instanceof Spot && ((Spot) next).getStatus() != Status.FREE) {
+					continue;
+				}
+				int neighbour = next.getIndex();
+				if (this.isTaken(neighbour, tick + 1, owner) || this.isCrossing(current, neighbour, tick)) {
+					blocked = true;
+					continue;
+				}
+				this.relax(neighbour, tick + 1, cost + e.getCost(slot), state);
+			}
+
+			// Attendre ne sert qu'à laisser passer un autre véhicule
+			if (blocked && !this.isTaken(current, tick + 1, owner)) {
+				this.relax(current, tick + 1, cost + this.waitCost(cell, slot), state);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Retourne l'instant du début du pas 0.
+	 * @return L'instant, en millisecondes.
+	 */
+	public long getEpochMillis() {
+		return epochMillis;
+	}
+
+	/**
+	 * Retourne le pas de temps où un trajet planifié et pas encore libéré quitte son noeud de départ.
+	 * @param route Le trajet retourné par plan.
+	 * @return Le pas de départ, ou -1 si le trajet n'est pas planifié par ce planificateur.
+	 */
+	public synchronized int getStartTick(Route route) {
+		int[] plan = planned.get(route);
+		return plan != null ? plan[1] : -1;
+	}
+
+	/**
+	 * Retire les réservations d'un trajet planifié, par exemple lorsque le véhicule est arrêté ou arrivé.
+	 * Les réservations d'autres véhicules aux mêmes noeuds et pas de temps sont conservées.
+	 * @param route Le trajet retourné par plan.
+	 */
+	public synchronized void release(Route route) {
+		int[] plan = planned.remove(route);
+		if (plan == null) {
+			return;
+		}
+		for (int i = 0; i < route.getLength(); i++) {
+			reservations.remove(route.getCell(i).getIndex(), plan[1] + i, plan[0]);
+		}
+	}
+
+	/**
+	 * Indique que les pas de temps antérieurs sont écoulés: leurs réservations seront abandonnées.
+	 * @param tick Le pas de temps courant.
+	 */
+	public synchronized void expireBefore(int tick) {
+		reservations.expireBefore(tick);
+	}
+
+	/**
+	 * Retourne le véhicule qui occupe un noeud à un pas de temps.
+	 * @param cell Le noeud.
+	 * @param tick Le pas de temps.
+	 * @return Le numéro du véhicule, ou -1 si le noeud est libre.
+	 */
+	public synchronized int getOccupant(Cell cell, int tick) {
+		return reservations.owner(cell.getIndex(), tick);
+	}
+
+	/**
+	 * Retourne le nombre de réservations espace-temps en vigueur.
+	 * @return Le nombre de réservations.
+	 */
+	public synchronized int getReservationCount() {
+		return reservations.size();
+	}
+
+	/**
+	 * Invalide les états et les arrivées de la recherche précédente.
+	 */
+	private void beginSearch() {
+		currentSearch++;
+		if (currentSearch == 0) {
+			Arrays.fill(arrivalStamp, 0);
+			currentSearch = 1;
+		}
+		stateNumbers.clear();
+		stateCount = 0;
+		openList.clear(grid.getMaxEdgeCost(), grid.getCostUnit());
+	}
+
+	/**
+	 * Ajoute un état ou abaisse son coût.
+	 */
+	private void relax(int cell, int tick, long cost, int parent) {
+		int state = stateNumbers.owner(cell, tick);
+		if (state < 0) {
+			if (stateCount == stateCell.length) {
+				int length = stateCount * 2;
+				stateCell = Arrays.copyOf(stateCell, length);
+				stateTick = Arrays.copyOf(stateTick, length);
+				stateParent = Arrays.copyOf(stateParent, length);
+				stateCost = Arrays.copyOf(stateCost, length);
+			}
+			state = stateCount++;
+			stateNumbers.reserve(cell, tick, state);
+			stateCell[state] = cell;
+			stateTick[state] = tick;
+		} else if (cost >= stateCost[state]) {
+			return;
+		}
+
+		stateCost[state] = cost;
+		stateParent[state] = parent;
+		openList.add(state, cost);
+	}
+
+	/**
+	 * Indique si une arrivée à un noeud est inutile: le noeud a déjà été atteint plus tôt et y attendre
+	 * depuis, sans conflit, aurait coûté au plus autant, ou il a déjà été atteint MAX_ARRIVALS fois.
+	 * Retient la dernière arrivée explorée à chaque noeud.
+	 */
+	private boolean isLateArrival(Cell cell, int tick, long cost, int slot) {
+		int index = cell.getIndex();
+		if (arrivalStamp[index] != currentSearch) {
+			arrivalStamp[index] = currentSearch;
+			arrivalCount[index] = 0;
+		} else if (arrivalCount[index] == MAX_ARRIVALS) {
+			return true;
+		} else if (this.isDominated(index, tick, cost, this.waitCost(cell, slot))) {
+			return true;
+		}
+		
+		arrivalTick[index] = tick;
+		arrivalCost[index] = cost;
+		arrivalCount[index]++;
+		return false;
+	}
+
+	/**
+	 * Indique si attendre sur un noeud depuis sa dernière arrivée explorée mène au même pas à un coût au plus égal.
+	 */
+	private boolean isDominated(int index, int tick, long cost, long waitCost) {
+		int previous = arrivalTick[index];
+		if (tick <= previous || cost < arrivalCost[index] + waitCost * (tick - previous)) {
+			return false;
+		}
+		for (int t = previous + 1; t <= tick; t++) {
+			if (reservations.owner(index, t) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Indique si un noeud est réservé par un autre véhicule à un pas de temps.
+	 */
+	private boolean isTaken(int cell, int tick, int owner) {
+		int occupant = reservations.owner(cell, tick);
+		return occupant >= 0 && occupant != owner;
+	}
+
+	/**
+	 * Indique si le véhicule qui occupe le voisin au pas courant se rend au noeud courant au pas suivant.
+	 */
+	private boolean isCrossing(int current, int neighbour, int tick) {
+		int occupant = reservations.owner(neighbour, tick);
+		return occupant >= 0 && reservations.owner(current, tick + 1) == occupant;
+	}
+
+	/**
+	 * Retourne le coût d'un pas d'attente sur un noeud: l'arête sortante la moins chère vers une route.
+	 */
+	private long waitCost(Cell cell, int slot) {
+		long cost = Long.MAX_VALUE;
+		for (Edge e : cell.getEdges()) {
+			if (e.getDestination() instanceof Road) {
+				cost = Math.min(cost, e.getCost(slot));
+			}
+		}
+		return cost == Long.MAX_VALUE || cost == 0 ? grid.getCostUnit() : cost;
+	}
+
+	/**
+	 * Construit le trajet d'un état final et réserve chacun de ses pas.
+	 */
+	private Route commit(int state, int owner, int departure) {
+		int length = 0;
+		for (int s = state; s >= 0; s = stateParent[s]) {
+			length++;
+		}
+
+		int[] path = new int[length];
+		int s = state;
+		for (int i = length - 1; i >= 0; i--) {
+			path[i] = stateCell[s];
+			s = stateParent[s];
+		}
+
+		// Chaque étape a été vérifiée libre pendant la recherche, qui détient le verrou du planificateur
+		for (int i = 0; i < length; i++) {
+			if (!reservations.reserve(path[i], departure + i, owner)) {
+				throw new IllegalStateException("Réservation espace-temps déjà prise: noeud " + path[i] + ", pas " + (departure + i));
+			}
+		}
+
+		Route route = new Route(grid, path, stateCost[state]);
+		planned.put(route, new int[] { owner, departure });
+		return route;
+	}
+}
@@ -0,0 +1,555 @@
+package com.coggers.parking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Trouve l'espace libre le plus proche sur plusieurs coeurs par l'algorithme delta-stepping (Meyer et Sanders).
+ * Les noeuds sont regroupés en compartiments de largeur delta selon leur distance. Tous les noeuds du
+ * compartiment courant sont traités en parallèle: leurs arêtes légères (coût au plus delta) sont relâchées
+ * jusqu'à ce que le compartiment ne change plus, puis leurs arêtes lourdes le sont une seule fois,
+ * avec la distance finale. Les distances sont mises à jour par comparaison-échange, sans verrou.
+ * <p>
+ * Lorsqu'un compartiment est terminé, les distances de ses noeuds sont finales: l'espace libre le plus
+ * proche est celui du premier compartiment qui en contient un. Les distances obtenues sont exactement
+ * celles de Pathfinder; entre deux espaces à égale distance, le choix peut différer.
+ * Les coûts utilisés sont ceux d'un seul intervalle de la journée pour tout le trajet, comme pour BatchRouter.
+ * <p>
+ * Les chemins ne sont pas conservés pendant la recherche, car deux fils qui améliorent le même noeud
+ * pourraient laisser un prédécesseur incohérent avec sa distance. Le trajet est reconstruit à rebours
+ * à partir des distances finales, par les arêtes entrantes.
+ * <p>
+ * Comme moteur de recherche (nom "delta-stepping"), la recherche à partir de plusieurs départs de Garage
+ * profite du parallélisme, ainsi que la recherche complète de l'espace le plus proche d'un noeud
+ * (Grid.findRoute sans contrôle, Grid.reserveNearestSpot) lorsqu'aucune route n'a de profil de trafic:
+ * le coût des arêtes ne dépend alors pas de l'heure. Les autres recherches, dont les coûts dépendent
+ * de l'heure le long du trajet, qui peuvent être arrêtées ou qui s'arrêtent près du départ, sont
+ * confiées à un Pathfinder.
+ * Une instance n'est pas réentrante: un seul fil d'exécution peut lancer une recherche à la fois.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+class DeltaStepping implements SearchEngine {
+	// Une tranche plus petite est traitée par un seul fil: la répartition coûterait plus cher que le travail
+	private static final int GRAIN = 1024;
+
+	// Les distances sont emballées avec le numéro de recherche, ce qui évite de vider les tableaux
+	private static final int DISTANCE_BITS = 44;
+	private static final long DISTANCE_MASK = (1L << DISTANCE_BITS) - 1;
+	private static final int MAX_SEARCH = (1 << (63 - DISTANCE_BITS)) - 1;
+
+	private Grid grid;
+	private Pathfinder sequential;
+	private ForkJoinPool pool;
+	private int deltaUnits;
+	private long delta;
+
+	// Arêtes sortantes et entrantes de chaque noeud; la topologie ne change pas après la construction de la grille
+	private int[] edgeStart;
+	private int[] edgeTarget;
+	private Edge[] edges;
+	private int[] reverseStart;
+	private int[] reverseSource;
+	private int[] reverseEdge;
+
+	// Coûts des arêtes pour l'intervalle de la dernière recherche
+	private int[] edgeCost;
+	private int costSlot;
+	private long costVersion;
+	private boolean hasHeavyEdges;
+
+	// Vrai si une arête a des coûts par intervalle, pour la version du trafic vérifiée
+	private boolean timeDependent;
+	private long timeDependentVersion;
+
+	private AtomicLongArray distance;
+	private AtomicLongArray lightDone;
+	private AtomicLongArray heavyDone;
+	private int currentSearch;
+	private long searchBits;
+
+	// Nombre de frontières réparties entre les fils depuis la construction, pour EngineChecker
+	private long parallelPhases;
+
+	/**
+	 * Construit le moteur et les tableaux d'arêtes de la grille.
+	 * @param grid La grille.
+	 * @param pool Le bassin de fils qui traite les compartiments.
+	 * @param deltaUnits La largeur d'un compartiment, en unités de coût de la grille.
+	 */
+	DeltaStepping(Grid grid, ForkJoinPool pool, int deltaUnits) {
+		if (deltaUnits < 1) {
+			throw new IllegalArgumentException("Largeur de compartiment invalide: " + deltaUnits);
+		}
+		this.grid = grid;
+		this.sequential = new Pathfinder(grid);
+		this.pool = pool;
+		this.deltaUnits = deltaUnits;
+
+		int cellCount = grid.getRows() * grid.getColumns();
+		this.edgeStart = new int[cellCount + 1];
+		this.reverseStart = new int[cellCount + 1];
+		for (int i = 0; i < cellCount; i++) {
+			for (Edge e : grid.getCell(i).getEdges()) {
+				edgeStart[i + 1]++;
+				reverseStart[e.getDestination().getIndex() + 1]++;
+			}
+		}
+		for (int i = 0; i < cellCount; i++) {
+			edgeStart[i + 1] += edgeStart[i];
+			reverseStart[i + 1] += reverseStart[i];
+		}
+
+		int edgeCount = edgeStart[cellCount];
+		this.edgeTarget = new int[edgeCount];
+		this.edges = new Edge[edgeCount];
+		this.reverseSource = new int[edgeCount];
+		this.reverseEdge = new int[edgeCount];
+		int[] fill = Arrays.copyOf(reverseStart, cellCount);
+		int k = 0;
+		for (int i = 0; i < cellCount; i++) {
+			for (Edge e : grid.getCell(i).getEdges()) {
+				int destination = e.getDestination().getIndex();
+				edgeTarget[k] = destination;
+				edges[k] = e;
+				int position = fill[destination]++;
+				reverseSource[position] = i;
+				reverseEdge[position] = k;
+				k++;
+			}
+		}
+
+		this.edgeCost = new int[edgeCount];
+		this.costSlot = -1;
+		this.timeDependentVersion = -1;
+		this.distance = new AtomicLongArray(cellCount);
+		this.lightDone = new AtomicLongArray(cellCount);
+		this.heavyDone = new AtomicLongArray(cellCount);
+	}
+
+	@Override
+	public String getName() {
+		return SearchEngines.DELTA_STEPPING;
+	}
+
+	/**
+	 * Retourne le nombre de frontières assez grandes pour avoir été réparties entre les fils.
+	 * @return Le nombre de phases parallèles depuis la construction du moteur.
+	 */
+	long getParallelPhases() {
+		return parallelPhases;
+	}
+
+	@Override
+	public Route findNearestFreeSpot(Cell start, int departureSecond, SearchControl control) {
+		// Sans profil de trafic, les coûts de l'intervalle du départ valent pour tout le trajet
+		if (control == null && start instanceof Road && !this.isTimeDependent()) {
+			return this.findNearestFreeSpot(start, TrafficProfile.slotAt(departureSecond));
+		}
+		return sequential.findNearestFreeSpot(start, departureSecond, control);
+	}
+
+	@Override
+	public List<Route> findNearestFreeSpots(Cell start, int count, int departureSecond) {
+		return sequential.findNearestFreeSpots(start, count, departureSecond);
+	}
+
+	@Override
+	public long[] findDistances(Cell start, Cell[] targets, int slot) {
+		return sequential.findDistances(start, targets, slot);
+	}
+
+	@Override
+	public Route findShortestPath(Cell start, Cell end, int slot) {
+		return sequential.findShortestPath(start, end, slot);
+	}
+
+	/**
+	 * Trouve le trajet vers l'espace libre le plus proche d'un noeud.
+	 * @param start Le noeud de départ.
+	 * @param slot L'intervalle de la journée utilisé pour le coût de toutes les arêtes.
+	 * @return Le trajet, ou null si aucun espace libre n'est accessible.
+	 */
+	Route findNearestFreeSpot(Cell start, int slot) {
+		return this.findNearestFreeSpot(new Cell[] { start }, new long[] { 0 }, slot);
+	}
+
+	/**
+	 * Trouve l'espace libre le plus proche d'un ensemble de noeuds de départ, chacun ayant sa propre
+	 * distance initiale. Le trajet obtenu commence au noeud de départ qui a mené à l'espace et
+	 * sa distance inclut la distance initiale de ce noeud.
+	 * @param sources Les noeuds de départ.
+	 * @param offsets La distance initiale de chaque noeud de départ.
+	 * @param slot L'intervalle de la journée utilisé pour le coût de toutes les arêtes.
+	 * @return Le trajet, ou null si aucun espace libre n'est accessible.
+	 */
+	@Override
+	public Route findNearestFreeSpot(Cell[] sources, long[] offsets, int slot) {
+		this.beginSearch(slot);
+
+		TreeMap<Long, List<IntList>> buckets = new TreeMap<Long, List<IntList>>();
+		for (int i = 0; i < sources.length; i++) {
+			int source = sources[i].getIndex();
+			if (this.improve(source, offsets[i])) {
+				IntList list = new IntList();
+				list.add(source);
+				this.bucket(buckets, offsets[i] / delta).add(list);
+			}
+		}
+
+		while (!buckets.isEmpty()) {
+			Map.Entry<Long, List<IntList>> entry = buckets.pollFirstEntry();
+			long bucket = entry.getKey();
+			List<IntList> settled = new ArrayList<IntList>();
+			List<IntList> spots = new ArrayList<IntList>();
+
+			// Relâche les arêtes légères jusqu'à ce que le compartiment ne reçoive plus de noeud
+			int[] frontier = IntList.concat(entry.getValue());
+			while (frontier.length > 0) {
+				List<IntList> current = new ArrayList<IntList>();
+				for (Output output : this.run(frontier, bucket, true)) {
+					current.add(output.current);
+					settled.add(output.settled);
+					spots.add(output.spots);
+					this.merge(buckets, bucket, output);
+				}
+				frontier = IntList.concat(current);
+			}
+
+			// Les distances du compartiment sont finales: un espace libre atteint est le plus proche
+			int best = -1;
+			for (int spot : IntList.concat(spots)) {
+				long d = this.getDistance(spot);
+				if (d / delta == bucket && (best < 0 || d < this.getDistance(best) || (d == this.getDistance(best) && spot < best))) {
+					best = spot;
+				}
+			}
+			if (best >= 0) {
+				return new Route(grid, this.buildPath(best, sources, offsets), this.getDistance(best));
+			}
+
+			if (hasHeavyEdges) {
+				for (Output output : this.run(IntList.concat(settled), bucket, false)) {
+					this.merge(buckets, bucket, output);
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Retourne la distance d'un noeud calculée par la dernière recherche. Seules les distances
+	 * inférieures à celle de l'espace trouvé sont garanties finales.
+	 * @param cell Le noeud.
+	 * @return La distance, ou Pathfinder.UNREACHED si le noeud n'a pas été atteint.
+	 */
+	long getDistanceFromStart(Cell cell) {
+		return this.getDistance(cell.getIndex());
+	}
+
+	/**
+	 * Indique si le coût d'une arête dépend de l'heure. Les arêtes ne sont parcourues à nouveau
+	 * que si le trafic a changé depuis la dernière vérification.
+	 */
+	private boolean isTimeDependent() {
+		long version = grid.getTrafficVersion();
+		if (version != timeDependentVersion) {
+			timeDependent = false;
+			for (int k = 0; k < edges.length && !timeDependent; k++) {
+				timeDependent = edges[k].isTimeDependent();
+			}
+			timeDependentVersion = version;
+		}
+		return timeDependent;
+	}
+
+	/**
+	 * Invalide les distances de la recherche précédente et prépare les coûts de l'intervalle.
+	 */
+	private void beginSearch(int slot) {
+		currentSearch++;
+		if (currentSearch > MAX_SEARCH) {
+			for (int i = 0; i < distance.length(); i++) {
+				distance.set(i, 0);
+				lightDone.set(i, 0);
+				heavyDone.set(i, 0);
+			}
+			currentSearch = 1;
+		}
+		searchBits = (long) currentSearch << DISTANCE_BITS;
+
+		// Les coûts ne sont relus que si l'intervalle ou le trafic a changé depuis la dernière recherche
+		long version = grid.getTrafficVersion();
+		if (slot != costSlot || version != costVersion) {
+			int maxCost = 0;
+			for (int k = 0; k < edges.length; k++) {
+				edgeCost[k] = edges[k].getCost(slot);
+				maxCost = Math.max(maxCost, edgeCost[k]);
+			}
+			costSlot = slot;
+			costVersion = version;
+			delta = (long) deltaUnits * grid.getCostUnit();
+			hasHeavyEdges = maxCost > delta;
+		}
+	}
+
+	/**
+	 * Traite une frontière en parallèle et retourne le résultat de chaque tranche.
+	 */
+	private ConcurrentLinkedQueue<Output> run(int[] frontier, long bucket, boolean light) {
+		ConcurrentLinkedQueue<Output> outputs = new ConcurrentLinkedQueue<Output>();
+		Phase phase = new Phase(frontier, 0, frontier.length, bucket, light, outputs);
+		if (frontier.length <= GRAIN) {
+			phase.process();
+		} else {
+			parallelPhases++;
+			pool.invoke(phase);
+		}
+		return outputs;
+	}
+
+	/**
+	 * Ajoute aux compartiments suivants les noeuds améliorés par une tranche.
+	 */
+	private void merge(TreeMap<Long, List<IntList>> buckets, long bucket, Output output) {
+		if (output.next.size > 0) {
+			this.bucket(buckets, bucket + 1).add(output.next);
+		}
+		for (int i = 0; i < output.laterNodes.size; i++) {
+			long later = bucket + 2 + output.laterOffsets.items[i];
+			List<IntList> lists = this.bucket(buckets, later);
+			if (lists.isEmpty()) {
+				lists.add(new IntList());
+			}
+			lists.get(0).add(output.laterNodes.items[i]);
+		}
+	}
+
+	private List<IntList> bucket(TreeMap<Long, List<IntList>> buckets, long bucket) {
+		List<IntList> lists = buckets.get(bucket);
+		if (lists == null) {
+			lists = new ArrayList<IntList>();
+			buckets.put(bucket, lists);
+		}
+		return lists;
+	}
+
+	/**
+	 * Traite une tranche de la frontière: chaque noeud dont la distance est encore dans le compartiment
+	 * relâche ses arêtes légères ou lourdes.
+	 */
+	private void process(int[] frontier, int from, int to, long bucket, boolean light, Output output) {
+		for (int p = from; p < to; p++) {
+			int node = frontier[p];
+			long packed = distance.get(node);
+			long d = packed & DISTANCE_MASK;
+
+			// Un noeud peut paraître plusieurs fois dans la frontière; il n'est traité qu'une fois par distance
+			if (d / delta != bucket || !claim(light ? lightDone : heavyDone, node, packed)) {
+				continue;
+			}
+
+			if (light) {
+				if (hasHeavyEdges) {
+					output.settled.add(node);
+				}
+				Cell cell = grid.getCell(node);
+				if (cell instanceof Spot && ((Spot) cell).getStatus() == Status.FREE) {
+					output.spots.add(node);
+				}
+			}
+
+			for (int k = edgeStart[node]; k < edgeStart[node + 1]; k++) {
+				int cost = edgeCost[k];
+				if ((cost <= delta) != light) {
+					continue;
+				}
+
+				long candidate = d + cost;
+				int neighbour = edgeTarget[k];
+				if (this.improve(neighbour, candidate)) {
+					long target = candidate / delta;
+					if (target == bucket) {
+						output.current.add(neighbour);
+					} else if (target == bucket + 1) {
+						output.next.add(neighbour);
+					} else {
+						output.laterNodes.add(neighbour);
+						output.laterOffsets.add((int) (target - bucket - 2));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Abaisse la distance d'un noeud si la distance proposée est plus petite.
+	 * @return Vrai si la distance a été abaissée.
+	 */
+	private boolean improve(int node, long candidate) {
+		long packed = searchBits | candidate;
+		while (true) {
+			long current = distance.get(node);
+			if ((current & ~DISTANCE_MASK) == searchBits && current <= packed) {
+				return false;
+			}
+			if (distance.compareAndSet(node, current, packed)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Réserve le traitement d'un noeud à une distance donnée.
+	 * @return Faux si le noeud a déjà été traité à cette distance.
+	 */
+	private static boolean claim(AtomicLongArray done, int node, long packed) {
+		while (true) {
+			long seen = done.get(node);
+			if (seen == packed) {
+				return false;
+			}
+			if (done.compareAndSet(node, seen, packed)) {
+				return true;
+			}
+		}
+	}
+
+	private long getDistance(int node) {
+		long packed = distance.get(node);
+		return (packed & ~DISTANCE_MASK) == searchBits ? packed & DISTANCE_MASK : Pathfinder.UNREACHED;
+	}
+
+	/**
+	 * Reconstruit le chemin vers un noeud en remontant, à chaque pas, une arête entrante dont
+	 * l'origine a une distance finale qui, ajoutée au coût de l'arête, donne la distance du noeud.
+	 */
+	private int[] buildPath(int end, Cell[] sources, long[] offsets) {
+		IntList reversed = new IntList();
+		int current = end;
+		reversed.add(current);
+		while (!this.isOrigin(current, sources, offsets)) {
+			long d = this.getDistance(current);
+			for (int k = reverseStart[current]; k < reverseStart[current + 1]; k++) {
+				int source = reverseSource[k];
+				long sourceDistance = this.getDistance(source);
+				if (sourceDistance != Pathfinder.UNREACHED && sourceDistance + edgeCost[reverseEdge[k]] == d) {
+					current = source;
+					break;
+				}
+			}
+			reversed.add(current);
+		}
+
+		int[] path = new int[reversed.size];
+		for (int i = 0; i < path.length; i++) {
+			path[i] = reversed.items[path.length - 1 - i];
+		}
+		return path;
+	}
+
+	private boolean isOrigin(int node, Cell[] sources, long[] offsets) {
+		for (int i = 0; i < sources.length; i++) {
+			if (sources[i].getIndex() == node && offsets[i] == this.getDistance(node)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Une tâche qui découpe une frontière en tranches traitées par le bassin de fils.
+	 */
+	private class Phase extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int[] frontier;
+		private int from;
+		private int to;
+		private long bucket;
+		private boolean light;
+		private ConcurrentLinkedQueue<Output> outputs;
+
+		Phase(int[] frontier, int from, int to, long bucket, boolean light, ConcurrentLinkedQueue<Output> outputs) {
+			this.frontier = frontier;
+			this.from = from;
+			this.to = to;
+			this.bucket = bucket;
+			this.light = light;
+			this.outputs = outputs;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= GRAIN) {
+				this.process();
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new Phase(frontier, from, middle, bucket, light, outputs),
+					new Phase(frontier, middle, to, bucket, light, outputs));
+		}
+
+		void process() {
+			Output output = new Output();
+			DeltaStepping.this.process(frontier, from, to, bucket, light, output);
+			outputs.add(output);
+		}
+	}
+
+	/**
+	 * Les noeuds produits par une tranche, conservés localement pour éviter toute contention.
+	 */
+	private static class Output {
+		// Noeuds améliorés dans le compartiment courant et dans le suivant
+		IntList current = new IntList();
+		IntList next = new IntList();
+		// Noeuds améliorés plus loin, avec leur écart au-delà du compartiment suivant
+		IntList laterNodes = new IntList();
+		IntList laterOffsets = new IntList();
+		IntList settled = new IntList();
+		IntList spots = new IntList();
+	}
+
+	/**
+	 * Une liste d'entiers extensible, sans emballage des valeurs.
+	 */
+	private static class IntList {
+		int[] items = new int[16];
+		int size;
+
+		void add(int value) {
+			if (size == items.length) {
+				items = Arrays.copyOf(items, size * 2);
+			}
+			items[size++] = value;
+		}
+
+		static int[] concat(List<IntList> lists) {
+			int length = 0;
+			for (IntList list : lists) {
+				length += list.size;
+			}
+			int[] result = new int[length];
+			int position = 0;
+			for (IntList list : lists) {
+				System.arraycopy(list.items, 0, result, position, list.size);
+				position += list.size;
+			}
+			return result;
+		}
+	}
+}
@@ -10,6 +10,7 @@ package com.coggers.parking;
  */
 public class Edge {	
 	private int cost;	
+	private int[] slotCosts;
 	private Cell destination;
 	
 	/**
@@ -30,6 +31,24 @@ public class Edge {
 		return cost;
 	}
 	
+	/**
+	 * Retourne le coût pour traverser cette arête pendant un intervalle de la journée.
+	 * Les coûts par intervalle sont précalculés par la grille lorsqu'une extrémité a un profil de trafic.
+	 * @param slot L'intervalle de la journée (0 à 95).
+	 * @return Le coût pour traverser cette arête.
+	 */
+	public int getCost(int slot){
+		return slotCosts != null ? slotCosts[slot] : cost;
+	}
+	
+	/**
+	 * Indique si le coût de cette arête dépend de l'intervalle de la journée.
+	 * @return Vrai si des coûts par intervalle sont précalculés.
+	 */
+	public boolean isTimeDependent(){
+		return slotCosts != null;
+	}
+	
 	/**
 	 * Retourne la destination de cette arête
 	 * @return destination La destination de cette arête.
@@ -45,4 +64,12 @@ public class Edge {
 	public void setCost(int cost){
 		this.cost = cost;
 	}
+	
+	/**
+	 * Assigne les coûts de cette arête pour chaque intervalle de la journée.
+	 * @param slotCosts Les coûts par intervalle, ou null si le coût est statique.
+	 */
+	public void setSlotCosts(int[] slotCosts){
+		this.slotCosts = slotCosts;
+	}
 }
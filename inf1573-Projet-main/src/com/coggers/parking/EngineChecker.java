@@ -0,0 +1,421 @@
+package com.coggers.parking;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Vérifie un moteur de recherche par comparaison avec Pathfinder, le moteur de référence.
+ * Des cartes sont générées par MapGenerator (taux d'occupation, modèles de trafic, tailles de noeud et
+ * profils journaliers variés; une carte sur deux n'a aucun profil, ce qui permet aux moteurs d'utiliser
+ * les mêmes coûts pour tout le trajet), puis les deux moteurs répondent aux mêmes recherches aléatoires de chaque
+ * sorte: espace le plus proche, espaces les plus proches, départs multiples, distances et chemin entre
+ * deux noeuds. Entre les recherches, l'occupation et le trafic changent pour éprouver les antémémoires
+ * des moteurs.
+ * <p>
+ * Les distances doivent être identiques; les trajets, qui peuvent différer à égale distance, doivent
+ * être valides: arêtes existantes, coût égal à la distance annoncée et espace d'arrivée libre.
+ * <p>
+ * L'option --parallel-size ajoute deux cartes carrées de ce côté, sans profil et presque pleines: les recherches
+ * y parcourent presque toute la carte, et leurs frontières sont assez grandes pour que DeltaStepping les
+ * répartisse entre les fils. Le nombre de ces phases parallèles est affiché.
+ * <p>
+ * Utilisation: EngineChecker moteur [--maps n] [--size n] [--queries n] [--seed n] [--parallel-size n]
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class EngineChecker {
+	// Nombre de différences décrites en détail; les suivantes sont seulement comptées
+	private static final int REPORTED_MISMATCHES = 10;
+	// Espaces laissés libres sur les grandes cartes, pour que les recherches parcourent presque toute la carte
+	private static final int LARGE_MAP_FREE_SPOTS = 4;
+
+	private String engineName;
+	private long mismatches;
+	private long queries;
+	private long parallelPhases;
+
+	/**
+	 * Construit un vérificateur pour un moteur.
+	 * @param engineName Le nom du moteur, tel qu'accepté par SearchEngines.create.
+	 */
+	public EngineChecker(String engineName) {
+		this.engineName = engineName;
+	}
+
+	/**
+	 * Génère une carte et y compare le moteur à la référence.
+	 * @param rows Le nombre de rangées de la carte.
+	 * @param columns Le nombre de colonnes de la carte.
+	 * @param queryCount Le nombre de recherches.
+	 * @param seed La graine de la carte et des recherches.
+	 * @param profiled Vrai pour donner un profil journalier à environ une route sur dix.
+	 * @return Le nombre de différences trouvées sur cette carte.
+	 */
+	public long checkGeneratedMap(int rows, int columns, int queryCount, long seed, boolean profiled) {
+		SplittableRandom random = new SplittableRandom(seed);
+		MapGenerator generator = new MapGenerator(rows, columns, seed);
+		generator.setOccupancy(0.5 + 0.49 * random.nextDouble(), random.nextBoolean() ? MapGenerator.OccupancyModel.UNIFORM : MapGenerator.OccupancyModel.ENTRANCE);
+		generator.setTraffic(1, 1 + random.nextInt(100), random.nextBoolean() ? MapGenerator.TrafficModel.UNIFORM : MapGenerator.TrafficModel.ARTERIAL);
+		Grid grid = this.generate(generator, rows, columns, random);
+
+		List<Road> roads = new ArrayList<Road>();
+		List<Spot> spots = new ArrayList<Spot>();
+		for (int i = 0; i < rows * columns; i++) {
+			Cell cell = grid.getCell(i);
+			if (cell instanceof Road) {
+				roads.add((Road) cell);
+				if (profiled && random.nextInt(10) == 0) {
+					grid.setTrafficProfile((Road) cell, randomProfile(random));
+				}
+			} else if (cell instanceof Spot) {
+				spots.add((Spot) cell);
+			}
+		}
+		return this.check(grid, roads, spots, queryCount, random);
+	}
+
+	/**
+	 * Génère une grande carte carrée sans profil de trafic où seuls quelques espaces sont libres, puis y
+	 * compare le moteur à la référence. Les recherches parcourent presque toute la carte, ce qui donne des
+	 * frontières assez grandes pour les phases parallèles de DeltaStepping.
+	 * @param side Le nombre de rangées et de colonnes de la carte.
+	 * @param queryCount Le nombre de recherches.
+	 * @param seed La graine de la carte et des recherches.
+	 * @return Le nombre de différences trouvées sur cette carte.
+	 */
+	public long checkLargeMap(int side, int queryCount, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		MapGenerator generator = new MapGenerator(side, side, seed);
+		generator.setTraffic(1, 1 + random.nextInt(100), random.nextBoolean() ? MapGenerator.TrafficModel.UNIFORM : MapGenerator.TrafficModel.ARTERIAL);
+		Grid grid = this.generate(generator, side, side, random);
+
+		List<Road> roads = new ArrayList<Road>();
+		List<Spot> spots = new ArrayList<Spot>();
+		for (int i = 0; i < side * side; i++) {
+			Cell cell = grid.getCell(i);
+			if (cell instanceof Road) {
+				roads.add((Road) cell);
+			} else if (cell instanceof Spot) {
+				spots.add((Spot) cell);
+				((Spot) cell).setStatus(Status.OCCUPIED);
+			}
+		}
+		for (int i = 0; i < LARGE_MAP_FREE_SPOTS && !spots.isEmpty(); i++) {
+			spots.get(random.nextInt(spots.size())).setStatus(Status.FREE);
+		}
+		return this.check(grid, roads, spots, queryCount, random);
+	}
+
+	/**
+	 * Écrit la carte du générateur et construit sa grille avec des noeuds de taille aléatoire.
+	 */
+	private Grid generate(MapGenerator generator, int rows, int columns, SplittableRandom random) {
+		StringWriter out = new StringWriter();
+		try {
+			generator.write(out);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		int map[][] = MapLoader.readMap(new ByteArrayInputStream(out.toString().getBytes(StandardCharsets.US_ASCII)));
+
+		// Des noeuds rectangulaires donnent des coûts différents selon la direction
+		return new Grid(columns * (1 + random.nextInt(4)), rows * (1 + random.nextInt(4)), map);
+	}
+
+	/**
+	 * Pose les recherches aux deux moteurs sur une grille.
+	 * @return Le nombre de différences trouvées sur cette grille.
+	 */
+	private long check(Grid grid, List<Road> roads, List<Spot> spots, int queryCount, SplittableRandom random) {
+		if (roads.isEmpty()) {
+			return 0;
+		}
+
+		long before = mismatches;
+		SearchEngine engine = SearchEngines.create(engineName, grid);
+		Pathfinder reference = new Pathfinder(grid);
+		for (int q = 0; q < queryCount; q++) {
+			this.change(grid, roads, spots, random);
+			this.compare(grid, engine, reference, roads, random);
+			queries++;
+		}
+		if (engine instanceof DeltaStepping) {
+			parallelPhases += ((DeltaStepping) engine).getParallelPhases();
+		}
+		return mismatches - before;
+	}
+
+	/**
+	 * Retourne le nombre total de différences trouvées.
+	 * @return Le nombre de différences.
+	 */
+	public long getMismatches() {
+		return mismatches;
+	}
+
+	/**
+	 * Retourne le nombre total de recherches comparées.
+	 * @return Le nombre de recherches.
+	 */
+	public long getQueries() {
+		return queries;
+	}
+
+	/**
+	 * Retourne le nombre de frontières que le moteur a réparties entre les fils, s'il en répartit.
+	 * @return Le nombre de phases parallèles.
+	 */
+	public long getParallelPhases() {
+		return parallelPhases;
+	}
+
+	/**
+	 * Modifie parfois l'occupation d'un espace ou le trafic d'une route.
+	 */
+	private void change(Grid grid, List<Road> roads, List<Spot> spots, SplittableRandom random) {
+		int change = random.nextInt(8);
+		if (change == 0 && !spots.isEmpty()) {
+			Spot spot = spots.get(random.nextInt(spots.size()));
+			spot.setStatus(spot.getStatus() == Status.FREE ? Status.OCCUPIED : Status.FREE);
+		} else if (change == 1) {
+			grid.setTraffic(roads.get(random.nextInt(roads.size())), 1 + random.nextInt(100));
+		}
+	}
+
+	/**
+	 * Pose une recherche aléatoire aux deux moteurs et compare leurs réponses.
+	 */
+	private void compare(Grid grid, SearchEngine engine, Pathfinder reference, List<Road> roads, SplittableRandom random) {
+		Cell start = roads.get(random.nextInt(roads.size()));
+		int departureSecond = random.nextInt(24 * 60 * 60);
+		int slot = random.nextInt(TrafficProfile.SLOTS);
+
+		switch (random.nextInt(5)) {
+			case 0: {
+				Route expected = reference.findNearestFreeSpot(start, departureSecond, null);
+				Route actual = engine.findNearestFreeSpot(start, departureSecond, null);
+				this.compareRoutes("espace le plus proche", start, expected, actual, -1, null, null);
+				break;
+			}
+			case 1: {
+				int count = 1 + random.nextInt(8);
+				List<Route> expected = reference.findNearestFreeSpots(start, count, departureSecond);
+				List<Route> actual = engine.findNearestFreeSpots(start, count, departureSecond);
+				if (expected.size() != actual.size()) {
+					this.report("espaces les plus proches", start, expected.size() + " trajets", actual.size() + " trajets");
+					break;
+				}
+				for (int i = 0; i < expected.size(); i++) {
+					if (!this.compareRoutes("espaces les plus proches", start, expected.get(i), actual.get(i), -1, null, null)) {
+						break;
+					}
+				}
+				break;
+			}
+			case 2: {
+				int count = 1 + random.nextInt(4);
+				Cell[] sources = new Cell[count];
+				long[] offsets = new long[count];
+				for (int i = 0; i < count; i++) {
+					sources[i] = roads.get(random.nextInt(roads.size()));
+					offsets[i] = (long) random.nextInt(200) * grid.getCostUnit();
+				}
+				Route expected = reference.findNearestFreeSpot(sources, offsets, slot);
+				Route actual = engine.findNearestFreeSpot(sources, offsets, slot);
+				this.compareRoutes("départs multiples", sources[0], expected, actual, slot, sources, offsets);
+				break;
+			}
+			case 3: {
+				Cell[] targets = new Cell[1 + random.nextInt(5)];
+				for (int i = 0; i < targets.length; i++) {
+					targets[i] = grid.getCell(random.nextInt(grid.getRows() * grid.getColumns()));
+				}
+				long[] expected = reference.findDistances(start, targets, slot);
+				long[] actual = engine.findDistances(start, targets, slot);
+				for (int i = 0; i < targets.length; i++) {
+					if (expected[i] != actual[i]) {
+						this.report("distances", start, String.valueOf(expected[i]), String.valueOf(actual[i]));
+						break;
+					}
+				}
+				break;
+			}
+			default: {
+				Cell end = roads.get(random.nextInt(roads.size()));
+				Route expected = reference.findShortestPath(start, end, slot);
+				Route actual = engine.findShortestPath(start, end, slot);
+				this.compareRoutes("chemin", start, expected, actual, slot, null, null);
+			}
+		}
+	}
+
+	/**
+	 * Compare deux trajets et vérifie celui du moteur.
+	 * @param slot L'intervalle des coûts, ou -1 si les coûts dépendent de l'heure le long du trajet.
+	 * @param sources Les départs multiples et leurs distances initiales, ou null.
+	 * @return Vrai si les trajets concordent.
+	 */
+	private boolean compareRoutes(String kind, Cell start, Route expected, Route actual, int slot, Cell[] sources, long[] offsets) {
+		if (expected == null || actual == null) {
+			if (expected != actual) {
+				this.report(kind, start, describe(expected), describe(actual));
+				return false;
+			}
+			return true;
+		}
+		if (expected.getDistance() != actual.getDistance()) {
+			this.report(kind, start, describe(expected), describe(actual));
+			return false;
+		}
+
+		String problem = null;
+		Cell destination = actual.getDestination();
+		if (sources == null && actual.getCell(0) != start) {
+			problem = "départ " + actual.getCell(0).getIndex();
+		} else if (expected.getDestination() instanceof Spot
+				&& !(destination instanceof Spot && ((Spot) destination).getStatus() == Status.FREE)) {
+			problem = "arrivée non libre " + destination.getIndex();
+		} else if (slot >= 0) {
+			long cost = this.pathCost(actual, slot);
+			if (sources != null) {
+				long offset = -1;
+				for (int i = 0; i < sources.length; i++) {
+					if (sources[i] == actual.getCell(0) && (offset < 0 || offsets[i] < offset)) {
+						offset = offsets[i];
+					}
+				}
+				cost = offset < 0 || cost < 0 ? -1 : cost + offset;
+			}
+			if (cost != actual.getDistance()) {
+				problem = "coût du trajet " + cost;
+			}
+		} else if (this.pathCost(actual, 0) < 0) {
+			problem = "arête inexistante";
+		}
+
+		if (problem != null) {
+			this.report(kind, start, describe(expected), describe(actual) + " (" + problem + ")");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Additionne le coût des arêtes d'un trajet pour un intervalle.
+	 * @return Le coût, ou -1 si deux noeuds consécutifs ne sont pas reliés.
+	 */
+	private long pathCost(Route route, int slot) {
+		long cost = 0;
+		for (int i = 1; i < route.getLength(); i++) {
+			Edge edge = null;
+			for (Edge e : route.getCell(i - 1).getEdges()) {
+				if (e.getDestination() == route.getCell(i)) {
+					edge = e;
+				}
+			}
+			if (edge == null) {
+				return -1;
+			}
+			cost += edge.getCost(slot);
+		}
+		return cost;
+	}
+
+	private void report(String kind, Cell start, String expected, String actual) {
+		mismatches++;
+		if (mismatches <= REPORTED_MISMATCHES) {
+			System.out.printf("Différence (%s) depuis %d: référence %s, %s %s%n", kind, start.getIndex(), expected, engineName, actual);
+		}
+	}
+
+	private static String describe(Route route) {
+		return route == null ? "aucun trajet" : "distance " + route.getDistance() + " vers " + route.getDestination().getIndex();
+	}
+
+	private static TrafficProfile randomProfile(SplittableRandom random) {
+		int[] values = new int[TrafficProfile.SLOTS];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = 1 + random.nextInt(100);
+		}
+		return new TrafficProfile(values);
+	}
+
+	/**
+	 * Point d'entrée du vérificateur. Le code de sortie est 1 si une différence est trouvée.
+	 * @param args Le nom du moteur et les options.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: EngineChecker <engine> [--maps n] [--size n] [--queries n] [--seed n] [--parallel-size n]");
+			System.out.println("Engines: " + String.join(", ", SearchEngines.getNames()));
+			return;
+		}
+
+		int maps = 8;
+		int size = 200;
+		int queryCount = 2000;
+		long seed = 1;
+		int parallelSize = 0;
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--maps":
+					maps = Integer.parseInt(value);
+					break;
+				case "--size":
+					size = Integer.parseInt(value);
+					break;
+				case "--queries":
+					queryCount = Integer.parseInt(value);
+					break;
+				case "--seed":
+					seed = Long.parseLong(value);
+					break;
+				case "--parallel-size":
+					parallelSize = Integer.parseInt(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Option inconnue: " + args[i]);
+			}
+		}
+
+		System.setProperty("java.awt.headless", "true");
+		EngineChecker checker = new EngineChecker(args[0]);
+		SplittableRandom random = new SplittableRandom(seed);
+		for (int m = 0; m < maps; m++) {
+			// Des cartes de formes variées, jusqu'à la taille demandée
+			int rows = Math.max(8, size / 2 + random.nextInt(size / 2 + 1));
+			int columns = Math.max(8, size / 2 + random.nextInt(size / 2 + 1));
+			boolean profiled = m % 2 == 0;
+			long found = checker.checkGeneratedMap(rows, columns, queryCount, seed + m, profiled);
+			System.out.printf("Carte %d: %d x %d%s, %d recherches, %d différence(s)%n", m + 1, rows, columns,
+					profiled ? "" : " sans profil", queryCount, found);
+		}
+
+		// Chaque recherche parcourt presque toute la grande carte: moins de recherches suffisent
+		int largeQueries = Math.max(20, queryCount / 100);
+		for (int m = 0; parallelSize > 0 && m < 2; m++) {
+			long found = checker.checkLargeMap(parallelSize, largeQueries, seed + maps + m);
+			System.out.printf("Grande carte %d: %d x %d sans profil, %d recherches, %d différence(s)%n", m + 1, parallelSize, parallelSize,
+					largeQueries, found);
+		}
+		if (parallelSize > 0) {
+			System.out.printf("Phases parallèles: %d%n", checker.getParallelPhases());
+		}
+
+		System.out.printf("Moteur %s: %d recherches, %d différence(s) avec la référence%n", args[0], checker.getQueries(), checker.getMismatches());
+		if (checker.getMismatches() > 0) {
+			System.exit(1);
+		}
+	}
+}
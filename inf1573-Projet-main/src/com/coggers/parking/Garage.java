@@ -0,0 +1,421 @@
+package com.coggers.parking;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Un garage à plusieurs étages. Chaque étage est une grille distincte, avec ses propres arêtes,
+ * sa propre recherche et son propre compte d'espaces libres; les étages sont reliés par des rampes
+ * situées à la même position sur deux étages voisins.
+ * <p>
+ * Une recherche se fait en trois temps:
+ * <ol>
+ * <li>les distances du départ aux rampes de son étage, puis les distances du départ à chaque rampe
+ * du garage sur un graphe réduit aux rampes;</li>
+ * <li>une recherche de l'espace libre le plus proche dans chaque étage, lancée en parallèle à partir
+ * de ses rampes et en ignorant les étages qui n'ont aucun espace libre;</li>
+ * <li>le meilleur résultat est retenu et son trajet est reconstruit, un tronçon par étage.</li>
+ * </ol>
+ * Les distances entre les rampes d'un même étage sont conservées pour chaque intervalle de la journée
+ * et recalculées lorsque le trafic de l'étage change. Comme pour BatchRouter, les coûts utilisés
+ * sont ceux de l'intervalle de la journée du départ pour tout le trajet.
+ * Les recherches des étages sont exécutées par des fils propres au garage, arrêtés par close.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class Garage implements Closeable {
+	// Longueur d'une rampe, en nombre de noeuds
+	static final int RAMP_LENGTH = 3;
+
+	private Grid[] floors;
+	private Clock clock;
+	private ExecutorService executor;
+
+	// Les rampes ont un numéro global: le numéro de la première rampe de l'étage plus leur position dans l'étage
+	private Ramp[][] ramps;
+	private int[] firstRamp;
+	private int[] rampFloor;
+	private int[] rampAbove;
+	private int[] rampBelow;
+
+	// Distances entre les rampes de chaque étage, par étage et par intervalle de la journée
+	private AtomicReferenceArray<RampTable> rampTables;
+
+	/**
+	 * Les distances entre les rampes d'un étage pendant un intervalle de la journée.
+	 */
+	private static class RampTable {
+		long trafficVersion;
+		long[][] distances;
+
+		RampTable(long trafficVersion, long[][] distances) {
+			this.trafficVersion = trafficVersion;
+			this.distances = distances;
+		}
+	}
+
+	/**
+	 * Construit un garage à partir de la carte de chaque étage.
+	 * @param width La largeur de chaque étage.
+	 * @param height La hauteur de chaque étage.
+	 * @param floorMaps La représentation tabulaire de chaque étage, du rez-de-chaussée vers le haut.
+	 */
+	public Garage(int width, int height, List<int[][]> floorMaps) {
+		if (floorMaps.isEmpty()) {
+			throw new IllegalArgumentException("Un garage doit avoir au moins un étage");
+		}
+
+		this.floors = new Grid[floorMaps.size()];
+		for (int f = 0; f < floors.length; f++) {
+			int[][] map = floorMaps.get(f);
+			if (map.length != floorMaps.get(0).length || map[0].length != floorMaps.get(0)[0].length) {
+				throw new IllegalArgumentException("Les étages doivent avoir les mêmes dimensions");
+			}
+			floors[f] = new Grid(width, height, map);
+		}
+
+		this.clock = Clock.systemDefaultZone();
+		this.executor = Executors.newFixedThreadPool(Math.min(floors.length, Runtime.getRuntime().availableProcessors()), r -> {
+			Thread thread = new Thread(r, "garage-search");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		this.findRamps();
+		this.rampTables = new AtomicReferenceArray<RampTable>(floors.length * TrafficProfile.SLOTS);
+	}
+
+	/**
+	 * Retourne le nombre d'étages.
+	 * @return Le nombre d'étages.
+	 */
+	public int getFloorCount() {
+		return floors.length;
+	}
+
+	/**
+	 * Retourne la grille d'un étage.
+	 * @param floor L'étage (0 pour le rez-de-chaussée).
+	 * @return La grille de l'étage.
+	 */
+	public Grid getFloor(int floor) {
+		return floors[floor];
+	}
+
+	/**
+	 * Assigne l'horloge utilisée pour déterminer l'heure de départ des recherches.
+	 * @param clock L'horloge.
+	 */
+	public void setClock(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Arrête les fils de recherche du garage. Le garage ne peut plus être utilisé ensuite.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Trouve le trajet le plus court vers l'espace libre le plus proche, tous étages confondus.
+	 * @param floor L'étage du noeud de départ.
+	 * @param start Le noeud de départ.
+	 * @return Le trajet, ou null si aucun espace libre n'est accessible.
+	 */
+	public GarageRoute findRoute(int floor, Cell start) {
+		return this.findRoute(floor, start, LocalTime.now(clock).toSecondOfDay());
+	}
+
+	/**
+	 * Trouve le trajet le plus court vers l'espace libre le plus proche pour une heure de départ donnée.
+	 * @param floor L'étage du noeud de départ.
+	 * @param start Le noeud de départ.
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @return Le trajet, ou null si aucun espace libre n'est accessible.
+	 */
+	public GarageRoute findRoute(int floor, Cell start, int departureSecond) {
+		int slot = TrafficProfile.slotAt(departureSecond);
+		RampTable[] tables = this.rampTables(slot);
+
+		// Distance du départ à chaque rampe du garage, et rampe précédente sur le meilleur trajet
+		int rampCount = rampFloor.length;
+		long[] entry = new long[rampCount];
+		int[] previous = new int[rampCount];
+		this.findRampDistances(floor, start, slot, tables, entry, previous);
+
+		// Une recherche par étage ayant au moins un espace libre, à partir de ses rampes atteintes
+		List<Callable<Route>> searches = new ArrayList<Callable<Route>>();
+		List<Integer> searchedFloors = new ArrayList<Integer>();
+		for (int f = 0; f < floors.length; f++) {
+			if (floors[f].getSpotCount(Status.FREE) == 0) {
+				continue;
+			}
+
+			List<Cell> sources = new ArrayList<Cell>();
+			List<Long> offsets = new ArrayList<Long>();
+			if (f == floor) {
+				sources.add(start);
+				offsets.add(0L);
+			}
+			for (int i = 0; i < ramps[f].length; i++) {
+				if (entry[firstRamp[f] + i] != Pathfinder.UNREACHED) {
+					sources.add(ramps[f][i]);
+					offsets.add(entry[firstRamp[f] + i]);
+				}
+			}
+			if (sources.isEmpty()) {
+				continue;
+			}
+
+			Grid grid = floors[f];
+			Cell[] sourceArray = sources.toArray(new Cell[0]);
+			long[] offsetArray = offsets.stream().mapToLong(Long::longValue).toArray();
+			searches.add(() -> grid.findNearestFreeSpot(sourceArray, offsetArray, slot));
+			searchedFloors.add(f);
+		}
+
+		List<Route> results = this.runAll(searches);
+		Route best = null;
+		int bestFloor = -1;
+		for (int k = 0; k < results.size(); k++) {
+			Route route = results.get(k);
+			if (route != null && (best == null || route.getDistance() < best.getDistance())) {
+				best = route;
+				bestFloor = searchedFloors.get(k);
+			}
+		}
+
+		if (best == null) {
+			return null;
+		}
+		return this.buildRoute(floor, start, bestFloor, best, previous, slot);
+	}
+
+	/**
+	 * Calcule la distance du départ à chaque rampe avec l'algorithme de Dijkstra sur le graphe des rampes:
+	 * les arêtes relient les rampes d'un même étage (distances conservées) et les rampes reliées entre étages.
+	 * Les rampes sont peu nombreuses: le minimum est cherché par un simple parcours.
+	 */
+	private void findRampDistances(int floor, Cell start, int slot, RampTable[] tables, long[] entry, int[] previous) {
+		int rampCount = entry.length;
+		boolean[] settled = new boolean[rampCount];
+		for (int g = 0; g < rampCount; g++) {
+			entry[g] = Pathfinder.UNREACHED;
+			previous[g] = -1;
+		}
+
+		long[] fromStart = floors[floor].findDistances(start, ramps[floor], slot);
+		for (int i = 0; i < fromStart.length; i++) {
+			entry[firstRamp[floor] + i] = fromStart[i];
+		}
+
+		while (true) {
+			int current = -1;
+			for (int g = 0; g < rampCount; g++) {
+				if (!settled[g] && entry[g] != Pathfinder.UNREACHED && (current < 0 || entry[g] < entry[current])) {
+					current = g;
+				}
+			}
+			if (current < 0) {
+				break;
+			}
+			settled[current] = true;
+
+			int f = rampFloor[current];
+			long[] row = tables[f].distances[current - firstRamp[f]];
+			for (int j = 0; j < row.length; j++) {
+				if (row[j] != Pathfinder.UNREACHED) {
+					this.relaxRamp(current, firstRamp[f] + j, entry[current] + row[j], entry, previous);
+				}
+			}
+
+			for (int next : new int[] { rampAbove[current], rampBelow[current] }) {
+				if (next >= 0) {
+					this.relaxRamp(current, next, entry[current] + this.rampCost(current, next, slot), entry, previous);
+				}
+			}
+		}
+	}
+
+	private void relaxRamp(int from, int to, long distance, long[] entry, int[] previous) {
+		if (distance < entry[to]) {
+			entry[to] = distance;
+			previous[to] = from;
+		}
+	}
+
+	/**
+	 * Calcule le coût du passage d'une rampe à la rampe reliée sur l'étage voisin.
+	 * Comme pour les arêtes d'un étage, le coût est la longueur multipliée par le trafic moyen.
+	 */
+	private long rampCost(int from, int to, int slot) {
+		Ramp a = ramps[rampFloor[from]][from - firstRamp[rampFloor[from]]];
+		Ramp b = ramps[rampFloor[to]][to - firstRamp[rampFloor[to]]];
+		return (long) RAMP_LENGTH * a.getHeight() * ((a.getTraffic(slot) + b.getTraffic(slot)) / 2);
+	}
+
+	/**
+	 * Reconstruit le trajet complet à partir du meilleur tronçon final et des rampes précédentes.
+	 */
+	private GarageRoute buildRoute(int floor, Cell start, int bestFloor, Route last, int[] previous, int slot) {
+		List<Route> legs = new ArrayList<Route>();
+		List<Integer> legFloors = new ArrayList<Integer>();
+
+		Cell source = last.getCell(0);
+		if (bestFloor == floor && source == start) {
+			legs.add(last);
+			return new GarageRoute(legs, new int[] { floor }, last.getDistance());
+		}
+
+		// Suite des rampes empruntées, du départ jusqu'à la rampe où commence le dernier tronçon
+		List<Integer> chain = new ArrayList<Integer>();
+		for (int g = this.rampNumber(bestFloor, source); g >= 0; g = previous[g]) {
+			chain.add(0, g);
+		}
+
+		// Un tronçon se termine à chaque changement d'étage
+		Cell legStart = start;
+		Cell legEnd = start;
+		int legFloor = floor;
+		for (int g : chain) {
+			Ramp ramp = ramps[rampFloor[g]][g - firstRamp[rampFloor[g]]];
+			if (rampFloor[g] != legFloor) {
+				legs.add(floors[legFloor].findPath(legStart, legEnd, slot));
+				legFloors.add(legFloor);
+				legStart = ramp;
+				legFloor = rampFloor[g];
+			}
+			legEnd = ramp;
+		}
+
+		// Le dernier tronçon part de la rampe d'arrivée sur l'étage
+		legs.add(legStart == source ? last : floors[bestFloor].findPath(legStart, last.getDestination(), slot));
+		legFloors.add(bestFloor);
+
+		return new GarageRoute(legs, legFloors.stream().mapToInt(Integer::intValue).toArray(), last.getDistance());
+	}
+
+	/**
+	 * Exécute les recherches des étages en parallèle. Une seule recherche est exécutée directement.
+	 */
+	private <T> List<T> runAll(List<Callable<T>> tasks) {
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			if (tasks.size() == 1) {
+				results.add(tasks.get(0).call());
+				return results;
+			}
+
+			for (Future<T> future : executor.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Recherche interrompue", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Recherche impossible", e.getCause());
+		} catch (Exception e) {
+			throw new IllegalStateException("Recherche impossible", e);
+		}
+	}
+
+	/**
+	 * Retourne les distances entre les rampes de chaque étage pour un intervalle de la journée.
+	 * Les tables périmées par un changement de trafic sont recalculées en parallèle.
+	 */
+	private RampTable[] rampTables(int slot) {
+		RampTable[] tables = new RampTable[floors.length];
+		List<Callable<RampTable>> updates = new ArrayList<Callable<RampTable>>();
+		List<Integer> updatedFloors = new ArrayList<Integer>();
+
+		for (int f = 0; f < floors.length; f++) {
+			RampTable table = rampTables.get(f * TrafficProfile.SLOTS + slot);
+			long version = floors[f].getTrafficVersion();
+			if (table != null && table.trafficVersion == version) {
+				tables[f] = table;
+				continue;
+			}
+
+			int floor = f;
+			updates.add(() -> {
+				long[][] distances = new long[ramps[floor].length][];
+				for (int i = 0; i < distances.length; i++) {
+					distances[i] = floors[floor].findDistances(ramps[floor][i], ramps[floor], slot);
+				}
+				return new RampTable(version, distances);
+			});
+			updatedFloors.add(f);
+		}
+
+		List<RampTable> updated = this.runAll(updates);
+		for (int k = 0; k < updated.size(); k++) {
+			int f = updatedFloors.get(k);
+			tables[f] = updated.get(k);
+			rampTables.set(f * TrafficProfile.SLOTS + slot, tables[f]);
+		}
+		return tables;
+	}
+
+	/**
+	 * Repère les rampes de chaque étage et les relie aux rampes situées à la même position sur les étages voisins.
+	 */
+	private void findRamps() {
+		this.ramps = new Ramp[floors.length][];
+		this.firstRamp = new int[floors.length];
+		int rampCount = 0;
+		for (int f = 0; f < floors.length; f++) {
+			List<Ramp> floorRamps = new ArrayList<Ramp>();
+			for (int i = 0; i < floors[f].getRows(); i++) {
+				for (int j = 0; j < floors[f].getColumns(); j++) {
+					if (floors[f].getCell(i, j) instanceof Ramp) {
+						floorRamps.add((Ramp) floors[f].getCell(i, j));
+					}
+				}
+			}
+			ramps[f] = floorRamps.toArray(new Ramp[0]);
+			firstRamp[f] = rampCount;
+			rampCount += ramps[f].length;
+		}
+
+		this.rampFloor = new int[rampCount];
+		this.rampAbove = new int[rampCount];
+		this.rampBelow = new int[rampCount];
+		for (int f = 0; f < floors.length; f++) {
+			for (int i = 0; i < ramps[f].length; i++) {
+				int g = firstRamp[f] + i;
+				rampFloor[g] = f;
+				rampAbove[g] = f + 1 < floors.length ? this.rampNumber(f + 1, floors[f + 1].getCell(ramps[f][i].getIndex())) : -1;
+				rampBelow[g] = f > 0 ? this.rampNumber(f - 1, floors[f - 1].getCell(ramps[f][i].getIndex())) : -1;
+			}
+		}
+	}
+
+	/**
+	 * Retourne le numéro global d'une rampe, ou -1 si le noeud n'est pas une rampe de l'étage.
+	 */
+	private int rampNumber(int floor, Cell cell) {
+		for (int i = 0; i < ramps[floor].length; i++) {
+			if (ramps[floor][i] == cell) {
+				return firstRamp[floor] + i;
+			}
+		}
+		return -1;
+	}
+}
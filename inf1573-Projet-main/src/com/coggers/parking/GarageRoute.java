@@ -0,0 +1,73 @@
+package com.coggers.parking;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Un trajet dans un garage à plusieurs étages: une suite de tronçons, un par étage traversé.
+ * Chaque tronçon se termine à une rampe, sauf le dernier qui se termine à l'espace de stationnement;
+ * le tronçon suivant commence à la rampe reliée sur l'étage voisin.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class GarageRoute {
+	private List<Route> legs;
+	private int[] floors;
+	private long distance;
+
+	/**
+	 * Construit un trajet.
+	 * @param legs Les tronçons, dans l'ordre du parcours.
+	 * @param floors L'étage de chaque tronçon.
+	 * @param distance La distance totale, rampes comprises.
+	 */
+	GarageRoute(List<Route> legs, int[] floors, long distance) {
+		this.legs = Collections.unmodifiableList(legs);
+		this.floors = floors;
+		this.distance = distance;
+	}
+
+	/**
+	 * Retourne les tronçons du trajet.
+	 * @return Les tronçons, dans l'ordre du parcours.
+	 */
+	public List<Route> getLegs() {
+		return legs;
+	}
+
+	/**
+	 * Retourne l'étage d'un tronçon.
+	 * @param leg La position du tronçon.
+	 * @return L'étage du tronçon.
+	 */
+	public int getFloor(int leg) {
+		return floors[leg];
+	}
+
+	/**
+	 * Retourne l'espace de stationnement au bout du trajet.
+	 * @return Le dernier noeud du dernier tronçon.
+	 */
+	public Cell getDestination() {
+		return legs.get(legs.size() - 1).getDestination();
+	}
+
+	/**
+	 * Retourne l'étage de l'espace de stationnement.
+	 * @return L'étage du dernier tronçon.
+	 */
+	public int getDestinationFloor() {
+		return floors[floors.length - 1];
+	}
+
+	/**
+	 * Retourne la distance totale du trajet.
+	 * @return distance La distance totale, rampes comprises.
+	 */
+	public long getDistance() {
+		return distance;
+	}
+}
@@ -5,13 +5,28 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Point;
+import java.time.Clock;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.swing.JButton;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
 import com.coggers.parking.Spot.Status;
 
@@ -26,6 +41,15 @@ import com.coggers.parking.Spot.Status;
  */
 public class Grid extends JPanel {	
 	private static final long serialVersionUID = 5268017295202116818L;
+	private static final int ROUTE_CACHE_CAPACITY = 1024;
+	// Nombre de recherches entre deux révisions du choix du moteur de recherche
+	private static final int ENGINE_REVIEW_SEARCHES = 256;
+	// Nombre de recherches reprises par reserveNearestSpot lorsque l'espace trouvé est pris entre-temps
+	private static final int RESERVE_ATTEMPTS = 4;
+	// Durée d'un pas de la simulation d'un véhicule
+	private static final long STEP_MILLIS = 250;
+	// Intervalle minimal entre deux images affichées (environ 30 images par seconde)
+	private static final int FRAME_MILLIS = 33;
 	private int width;
 	private int height;
 	
@@ -36,19 +60,41 @@ public class Grid extends JPanel {
 	private int columnWidth;
 	
 	private Cell cells[][];
+	private int maxEdgeCost;
+	private volatile long trafficVersion;
 	
 	private Cell startCell;
-	private ArrayList<Cell> shortestPath;
+	private volatile Vehicle activeVehicle;
+	private CopyOnWriteArrayList<Vehicle> vehicles;
+	private ScheduledExecutorService simulation;
+	private JPanel buttonPanel;
 	
-	private Pathfinder pathfinder;
-	private Cell currentCell;
-	boolean isMoving = false;
+	private SearchEngine searchEngine;
+	private Map<String, SearchEngine> searchEngines;
+	private int searchesSinceReview;
+	private long reviewedTrafficVersion;
+	private BatchRouter batchRouter;
+	private volatile CooperativePlanner cooperativePlanner;
+	private RouteCache routeCache;
+	private ReentrantLock searchLock;
+	private Clock clock;
+	
+	private CopyOnWriteArrayList<OccupancyListener> occupancyListeners;
+	private AtomicIntegerArray spotCounts;
+	private volatile TraceRecorder traceRecorder;
+	private volatile SharedOccupancy sharedOccupancy;
+	
+	// Dernière image construite pour le rendu, et indicateur d'un changement depuis cette image
+	private volatile RenderSnapshot renderSnapshot;
+	private AtomicBoolean snapshotPending;
+	private Timer frameTimer;
 
 	/**
 	 * Construit la grille qui modélise les routes et les espaces de stationnement.
 	 * @param width La largeur de la grille.
 	 * @param height La hauteur de la grille.
 	 * @param map La représentation tabulaire de la carte
+	 * @throws IllegalArgumentException Si la propriété parking.engine ne nomme aucun moteur de recherche.
 	 */
 	public Grid(int width, int height, int[][] map) {		
 		this.width = width;
@@ -65,11 +111,23 @@ public class Grid extends JPanel {
 		// L'ajout de 1 pixel permet de s'assurer que toutes les bordures soient visibles
 		this.setPreferredSize(new Dimension(width + 1, height + 1));
 		
-		this.pathfinder = new Pathfinder();
-		this.shortestPath = new ArrayList<Cell>();
+		this.vehicles = new CopyOnWriteArrayList<Vehicle>();
+		this.snapshotPending = new AtomicBoolean();
+		this.occupancyListeners = new CopyOnWriteArrayList<OccupancyListener>();
+		this.spotCounts = new AtomicIntegerArray(Status.values().length);
+		this.routeCache = new RouteCache(ROUTE_CACHE_CAPACITY);
+		this.searchLock = new ReentrantLock();
+		this.clock = Clock.systemDefaultZone();
+		this.occupancyListeners.add(routeCache);
 		
 		// Constuction de la grille
 		this.build(map);
+		
+		this.searchEngines = new HashMap<String, SearchEngine>();
+		this.batchRouter = new BatchRouter(this);
+		
+		// Un moteur imposé mal nommé ferait échouer chaque recherche: l'erreur est signalée dès maintenant
+		SearchEngines.getConfiguredName();
 	}
 	
 	/**
@@ -88,6 +146,124 @@ public class Grid extends JPanel {
 		startCell = cell;
 	}
 	
+	/**
+	 * Retourne le nombre de rangées de la grille.
+	 * @return rows Le nombre de rangées.
+	 */
+	public int getRows() {
+		return rows;
+	}
+	
+	/**
+	 * Retourne le nombre de colonnes de la grille.
+	 * @return columns Le nombre de colonnes.
+	 */
+	public int getColumns() {
+		return columns;
+	}
+	
+	/**
+	 * Retourne le noeud à la rangée et à la colonne données.
+	 * @param row L'indice de la rangée.
+	 * @param column L'indice de la colonne.
+	 * @return cell Le noeud.
+	 */
+	public Cell getCell(int row, int column) {
+		return cells[row][column];
+	}
+	
+	/**
+	 * Retourne le noeud ayant l'indice donné.
+	 * @param index L'indice du noeud (rangée * colonnes + colonne).
+	 * @return cell Le noeud.
+	 */
+	public Cell getCell(int index) {
+		return cells[index / columns][index % columns];
+	}
+	
+	/**
+	 * Retourne une borne supérieure du coût d'une arête de la grille, tous intervalles de la journée confondus.
+	 * @return maxEdgeCost Le coût maximal d'une arête.
+	 */
+	public int getMaxEdgeCost() {
+		return maxEdgeCost;
+	}
+	
+	/**
+	 * Retourne une unité qui divise le coût de toutes les arêtes de la grille.
+	 * @return L'unité de coût des arêtes.
+	 */
+	public int getCostUnit() {
+		int a = columnWidth;
+		int b = rowHeight;
+		while (b != 0) {
+			int r = a % b;
+			a = b;
+			b = r;
+		}
+		return Math.max(1, a);
+	}
+	
+	/**
+	 * Retourne le nombre d'espaces de stationnement ayant un statut donné.
+	 * @param status Le statut.
+	 * @return Le nombre d'espaces ayant ce statut.
+	 */
+	int getSpotCount(Status status) {
+		return spotCounts.get(status.ordinal());
+	}
+	
+	/**
+	 * Retourne un numéro incrémenté à chaque modification du trafic de la grille.
+	 * @return Le numéro de version du trafic.
+	 */
+	long getTrafficVersion() {
+		return trafficVersion;
+	}
+	
+	/**
+	 * Ajoute un observateur notifié à chaque changement de statut d'un espace de stationnement.
+	 * @param listener L'observateur à ajouter.
+	 */
+	void addOccupancyListener(OccupancyListener listener) {
+		occupancyListeners.add(listener);
+	}
+	
+	/**
+	 * Assigne l'enregistreur de trace notifié de chaque recherche.
+	 * @param traceRecorder L'enregistreur, ou null pour arrêter l'enregistrement.
+	 */
+	void setTraceRecorder(TraceRecorder traceRecorder) {
+		this.traceRecorder = traceRecorder;
+	}
+	
+	/**
+	 * Assigne l'état partagé par lequel passent les réservations de la grille.
+	 * @param sharedOccupancy L'état partagé, ou null pour réserver dans ce processus seulement.
+	 */
+	void setSharedOccupancy(SharedOccupancy sharedOccupancy) {
+		this.sharedOccupancy = sharedOccupancy;
+	}
+	
+	/**
+	 * Réserve un espace de stationnement s'il est libre. Lorsque l'occupation est partagée avec d'autres
+	 * processus, la réservation passe par le fichier partagé et n'est accordée qu'à un seul processus.
+	 * @param spot L'espace de stationnement.
+	 * @return Vrai si l'espace a été réservé, faux s'il n'était pas libre.
+	 */
+	public boolean reserveSpot(Spot spot) {
+		SharedOccupancy shared = sharedOccupancy;
+		return shared != null ? shared.reserve(spot) : spot.reserve();
+	}
+	
+	/**
+	 * Retire un observateur des changements de statut.
+	 * @param listener L'observateur à retirer.
+	 */
+	void removeOccupancyListener(OccupancyListener listener) {
+		occupancyListeners.remove(listener);
+	}
+	
 	/**
 	 * Retourne le noeud à la position.
 	 * @param position Les coordonnées X et Y du noeud (en pixel).
@@ -101,22 +277,86 @@ public class Grid extends JPanel {
 	}
 	
 	/**
-	 * Met à jour la représentation graphique de la grille en appelant la méthode repaint de JPanel.
+	 * Met à jour la représentation graphique de la grille en publiant une nouvelle image.
 	 */	
 	public void update() {
-		this.repaint();
+		this.publishSnapshot();
 	}
 	
 	/**
 	 * Réinitialise la grille pour que la prochaine recherche de chemin soit exacte .
+	 * Le véhicule en cours poursuit son trajet mais n'est plus contrôlé par l'interface.
 	 */	
 	public void reset() {
-		shortestPath.clear();
-		for (int i = 0; i < this.rows; i++) {
-			for (int j = 0; j < this.columns; j++) {
-				cells[i][j].clearPathfindingMetrics();
+		activeVehicle = null;
+	}
+	
+	/**
+	 * Indique que l'état visible de la grille a changé. Peut être appelée par n'importe quel fil après chaque
+	 * modification: elle ne fait que marquer l'image comme périmée, sans copie ni verrou. Le minuteur
+	 * d'affichage reconstruit l'image au plus une fois par trame, et seulement lorsque la grille est affichée.
+	 */
+	void publishSnapshot() {
+		snapshotPending.set(true);
+	}
+	
+	/**
+	 * Reconstruit l'image si l'état a changé depuis la dernière trame et demande au rendu de la dessiner.
+	 * Appelée par le minuteur d'affichage, sur le fil de l'interface.
+	 */
+	private void renderFrame() {
+		if (snapshotPending.getAndSet(false)) {
+			renderSnapshot = this.captureSnapshot();
+			this.repaint();
+		}
+	}
+	
+	/**
+	 * Démarre le minuteur d'affichage lorsque la grille est ajoutée à une fenêtre.
+	 */
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		if (frameTimer == null) {
+			frameTimer = new Timer(FRAME_MILLIS, e -> this.renderFrame());
+		}
+		frameTimer.start();
+	}
+	
+	/**
+	 * Arrête le minuteur d'affichage lorsque la grille est retirée de sa fenêtre.
+	 */
+	@Override
+	public void removeNotify() {
+		frameTimer.stop();
+		super.removeNotify();
+	}
+	
+	/**
+	 * Copie l'état visible des noeuds et la position des véhicules en mouvement.
+	 */
+	private RenderSnapshot captureSnapshot() {
+		Color[] colors = new Color[rows * columns];
+		Status[] statuses = new Status[rows * columns];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				Cell cell = cells[i][j];
+				colors[cell.getIndex()] = cell.getColor();
+				if (cell instanceof Spot) {
+					statuses[cell.getIndex()] = ((Spot) cell).getStatus();
+				}
+			}
+		}
+		
+		int[] positions = new int[vehicles.size()];
+		int count = 0;
+		for (Vehicle vehicle : vehicles) {
+			if (count < positions.length && vehicle.isMoving()) {
+				positions[count++] = vehicle.getCurrentCell().getIndex();
 			}
 		}
+		
+		return new RenderSnapshot(columns, columnWidth, rowHeight, colors, statuses, Arrays.copyOf(positions, count));
 	}
 	
 	/**
@@ -137,10 +377,18 @@ public class Grid extends JPanel {
 					currentCell = new Spot(new Point(j * columnWidth, i * rowHeight), columnWidth, rowHeight, Status.FREE);
 				} else if (map[i][j] == 300) {
 					currentCell = new Spot(new Point(j * columnWidth, i * rowHeight), columnWidth, rowHeight, Status.OCCUPIED);
+				} else if (map[i][j] > 400 && map[i][j] <= 500) {
+					currentCell = new Ramp(new Point(j * columnWidth, i * rowHeight), columnWidth, rowHeight, map[i][j] - 400);
 				} else {
 					currentCell = new Wall(new Point(j * columnWidth, i * rowHeight), columnWidth, rowHeight);
 				}
 
+				if (currentCell instanceof Spot) {
+					((Spot) currentCell).setOccupancyListener(this::fireStatusChanged);
+					spotCounts.incrementAndGet(((Spot) currentCell).getStatus().ordinal());
+				}
+				currentCell.setIndex(i * columns + j);
+
 				cells[i][j] = currentCell;
 			}
 		}
@@ -150,125 +398,535 @@ public class Grid extends JPanel {
 		for (int i = 0; i < rows; i++) {
 			for (int j = 0; j < columns; j++) {
 				if ((cells[i][j] instanceof Road)) {
-					int currentCellTraffic = ((Road) cells[i][j]).getTraffic();
-					int destinationCellTraffic = 0;
-					
-					if (i + 1 < rows && !(cells[i + 1][j] instanceof Wall)) {
-						destinationCellTraffic = cells[i + 1][j] instanceof Road ? ((Road) cells[i + 1][j]).getTraffic() : 0;
-						cells[i][j].addEdge(new Edge(columnWidth * ((currentCellTraffic + destinationCellTraffic) / 2), cells[i + 1][j]));
+					if (i + 1 < rows) {
+						this.connect(cells[i][j], cells[i + 1][j]);
 					}
 					
-					if (j + 1 < columns && !(cells[i][j + 1] instanceof Wall)) {
-						destinationCellTraffic = cells[i][j + 1] instanceof Road ? ((Road) cells[i][j + 1]).getTraffic() : 0;
-						cells[i][j].addEdge(new Edge(rowHeight * ((currentCellTraffic + destinationCellTraffic) / 2), cells[i][j + 1]));
+					if (j + 1 < columns) {
+						this.connect(cells[i][j], cells[i][j + 1]);
 					}
 					
-					if (i - 1 >= 0  && !(cells[i - 1][j] instanceof Wall)) {
-						destinationCellTraffic = cells[i - 1][j] instanceof Road ? ((Road) cells[i - 1][j]).getTraffic() : 0;
-						cells[i][j].addEdge(new Edge(columnWidth * ((currentCellTraffic + destinationCellTraffic) / 2), cells[i - 1][j]));
+					if (i - 1 >= 0) {
+						this.connect(cells[i][j], cells[i - 1][j]);
 					}
 					
-					if (j - 1 >= 0 && !(cells[i][j - 1] instanceof Wall)) {
-						destinationCellTraffic = cells[i][j - 1] instanceof Road ? ((Road) cells[i][j - 1]).getTraffic() : 0;
-						cells[i][j].addEdge(new Edge(rowHeight * ((currentCellTraffic + destinationCellTraffic) / 2), cells[i][j - 1]));
+					if (j - 1 >= 0) {
+						this.connect(cells[i][j], cells[i][j - 1]);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Ajoute une arête entre une route et un noeud voisin, sauf si le voisin est un mur.
+	 * @param from La route d'origine.
+	 * @param to Le noeud voisin.
+	 */
+	private void connect(Cell from, Cell to) {
+		if (!(to instanceof Wall)) {
+			int cost = this.edgeCost(from, to);
+			maxEdgeCost = Math.max(maxEdgeCost, cost);
+			from.addEdge(new Edge(cost, to));
+		}
+	}
+	
+	/**
+	 * Calcule le coût d'une arête à partir du trafic moyen de ses deux extrémités.
+	 * @param from La route d'origine.
+	 * @param to Le noeud de destination.
+	 * @return Le coût de l'arête.
+	 */
+	private int edgeCost(Cell from, Cell to) {
+		int currentCellTraffic = ((Road) from).getTraffic();
+		int destinationCellTraffic = to instanceof Road ? ((Road) to).getTraffic() : 0;
+		
+		return this.edgeLength(from, to) * ((currentCellTraffic + destinationCellTraffic) / 2);
+	}
+	
+	/**
+	 * Calcule le coût d'une arête pendant un intervalle de la journée.
+	 * @param from La route d'origine.
+	 * @param to Le noeud de destination.
+	 * @param slot L'intervalle de la journée (0 à 95).
+	 * @return Le coût de l'arête.
+	 */
+	private int edgeCost(Cell from, Cell to, int slot) {
+		int currentCellTraffic = ((Road) from).getTraffic(slot);
+		int destinationCellTraffic = to instanceof Road ? ((Road) to).getTraffic(slot) : 0;
+		
+		return this.edgeLength(from, to) * ((currentCellTraffic + destinationCellTraffic) / 2);
+	}
+	
+	/**
+	 * Retourne la longueur d'une arête selon son orientation.
+	 */
+	private int edgeLength(Cell from, Cell to) {
+		return from.getRow() != to.getRow() ? columnWidth : rowHeight;
+	}
+	
+	/**
+	 * Recalcule le coût statique d'une arête et, si une extrémité a un profil de trafic,
+	 * ses coûts précalculés pour chaque intervalle de la journée.
+	 * @param from La route d'origine de l'arête.
+	 * @param edge L'arête à mettre à jour.
+	 */
+	private void updateCosts(Cell from, Edge edge) {
+		Cell to = edge.getDestination();
+		edge.setCost(this.edgeCost(from, to));
+		maxEdgeCost = Math.max(maxEdgeCost, edge.getCost());
+		
+		boolean timeDependent = ((Road) from).getTrafficProfile() != null
+				|| (to instanceof Road && ((Road) to).getTrafficProfile() != null);
+		if (!timeDependent) {
+			edge.setSlotCosts(null);
+			return;
+		}
+		
+		int[] slotCosts = new int[TrafficProfile.SLOTS];
+		for (int slot = 0; slot < TrafficProfile.SLOTS; slot++) {
+			slotCosts[slot] = this.edgeCost(from, to, slot);
+			maxEdgeCost = Math.max(maxEdgeCost, slotCosts[slot]);
+		}
+		edge.setSlotCosts(slotCosts);
+	}
+	
+	/**
+	 * Recalcule le coût des arêtes qui partent d'une route ou qui y arrivent.
+	 * @param road La route dont le trafic a changé.
+	 */
+	private void updateEdgeCosts(Road road) {
+		for (Edge e : road.getEdges()) {
+			this.updateCosts(road, e);
+			
+			if (e.getDestination() instanceof Road) {
+				for (Edge back : e.getDestination().getEdges()) {
+					if (back.getDestination() == road) {
+						this.updateCosts(e.getDestination(), back);
 					}
 				}
 			}
 		}
 	}
 	
+	/**
+	 * Modifie le coefficient de trafic d'une route et recalcule le coût des arêtes qui la touchent.
+	 * Une mesure en direct remplace le profil journalier de la route.
+	 * @param road La route à modifier.
+	 * @param traffic Le nouveau coefficient de trafic (1 à 100).
+	 */
+	public void setTraffic(Road road, int traffic) {
+		searchLock.lock();
+		try {
+			int previous = road.getTraffic();
+			boolean hadProfile = road.getTrafficProfile() != null;
+			road.setTraffic(traffic);
+			this.updateEdgeCosts(road);
+			trafficVersion++;
+			
+			if (hadProfile) {
+				routeCache.trafficProfileChanged(road);
+			} else {
+				routeCache.trafficChanged(road, previous, traffic);
+			}
+		} finally {
+			searchLock.unlock();
+		}
+	}
+	
+	/**
+	 * Assigne un profil journalier de trafic à une route et précalcule le coût de ses arêtes pour chaque intervalle.
+	 * @param road La route à modifier.
+	 * @param trafficProfile Le profil, ou null pour revenir au trafic statique.
+	 */
+	public void setTrafficProfile(Road road, TrafficProfile trafficProfile) {
+		searchLock.lock();
+		try {
+			road.setTrafficProfile(trafficProfile);
+			this.updateEdgeCosts(road);
+			trafficVersion++;
+			routeCache.trafficProfileChanged(road);
+		} finally {
+			searchLock.unlock();
+		}
+	}
+	
+	/**
+	 * Assigne l'horloge utilisée pour déterminer l'heure de départ des recherches.
+	 * @param clock L'horloge.
+	 */
+	public void setClock(Clock clock) {
+		this.clock = clock;
+	}
+	
+	/**
+	 * Active ou désactive la planification coopérative des véhicules lancés par executeSearch.
+	 * En mode coopératif, chaque véhicule est planifié autour des noeuds que les véhicules déjà en route
+	 * occupent à chaque pas de la simulation, et peut attendre pour les laisser passer.
+	 * @param enabled Vrai pour activer la planification coopérative.
+	 */
+	public void setCooperativeRouting(boolean enabled) {
+		searchLock.lock();
+		try {
+			if (!enabled) {
+				cooperativePlanner = null;
+			} else if (cooperativePlanner == null) {
+				cooperativePlanner = new CooperativePlanner(this, 4 * (rows + columns), clock.millis());
+			}
+		} finally {
+			searchLock.unlock();
+		}
+	}
+	
+	/**
+	 * Trouve le trajet le plus court entre un noeud et l'espace de stationnement libre le plus proche.
+	 * Les trajets sont conservés dans une antémémoire tant que l'occupation et le trafic ne les invalident pas.
+	 * @param start Le noeud de départ.
+	 * @return Le trajet, ou null si aucun espace libre n'est accessible.
+	 */
+	public Route findRoute(Cell start) {
+		return this.findRoute(start, LocalTime.now(clock).toSecondOfDay());
+	}
+	
+	/**
+	 * Trouve le trajet le plus court vers l'espace de stationnement libre le plus proche pour un départ à une heure donnée.
+	 * Le coût de chaque arête est celui de l'intervalle de la journée où le véhicule l'atteint.
+	 * @param start Le noeud de départ.
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @return Le trajet, ou null si aucun espace libre n'est accessible.
+	 */
+	public Route findRoute(Cell start, int departureSecond) {
+		return this.findRoute(start, departureSecond, null);
+	}
+	
+	/**
+	 * Trouve le trajet le plus court vers l'espace de stationnement libre le plus proche pour l'heure courante,
+	 * en s'arrêtant si le contrôle l'exige.
+	 * @param start Le noeud de départ.
+	 * @param control Le contrôle de la recherche.
+	 * @return Le trajet, possiblement non optimal si la recherche a été arrêtée, ou null si aucun espace libre n'a été atteint.
+	 */
+	public Route findRoute(Cell start, SearchControl control) {
+		return this.findRoute(start, LocalTime.now(clock).toSecondOfDay(), control);
+	}
+	
+	/**
+	 * Trouve le trajet le plus court vers l'espace de stationnement libre le plus proche pour un départ à une heure donnée,
+	 * en s'arrêtant si le contrôle l'exige. Une recherche arrêtée par son échéance retourne le meilleur espace
+	 * atteint, marqué non optimal; seuls les trajets optimaux sont conservés dans l'antémémoire.
+	 * L'attente des autres recherches est comptée dans le délai du contrôle: si l'échéance survient avant que
+	 * la recherche puisse commencer, le contrôle est marqué arrêté et null est retourné.
+	 * @param start Le noeud de départ.
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @param control Le contrôle de la recherche, ou null pour une recherche complète.
+	 * @return Le trajet, ou null si aucun espace libre n'est accessible ou n'a été atteint avant l'arrêt.
+	 */
+	public Route findRoute(Cell start, int departureSecond, SearchControl control) {
+		long begin = System.nanoTime();
+		int slot = TrafficProfile.slotAt(departureSecond);
+		Route route = routeCache.get(start, slot);
+		if (route == null && this.lockSearch(control)) {
+			try {
+				long epoch = routeCache.getEpoch();
+				route = this.getSearchEngine().findNearestFreeSpot(start, departureSecond, control);
+				if (route != null && route.isOptimal()) {
+					routeCache.put(start, slot, route, epoch);
+				}
+			} finally {
+				searchLock.unlock();
+			}
+		}
+		
+		TraceRecorder recorder = traceRecorder;
+		if (recorder != null) {
+			recorder.recordQuery(start, departureSecond, route, System.nanoTime() - begin);
+		}
+		return route;
+	}
+	
+	/**
+	 * Prend le verrou des recherches en attendant au plus le délai qui reste au contrôle.
+	 * @param control Le contrôle de la recherche, ou null pour attendre sans limite.
+	 * @return Vrai si le verrou est pris; faux si l'échéance est passée ou si l'attente a été interrompue,
+	 * auquel cas le contrôle est marqué arrêté.
+	 */
+	private boolean lockSearch(SearchControl control) {
+		if (control == null) {
+			searchLock.lock();
+			return true;
+		}
+		
+		try {
+			if (searchLock.tryLock(control.getRemainingNanos(), TimeUnit.NANOSECONDS)) {
+				return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			control.cancel();
+		}
+		control.isStopped();
+		return false;
+	}
+	
+	/**
+	 * Trouve le trajet vers l'espace de stationnement libre le plus proche pour plusieurs noeuds de départ à la fois.
+	 * Les départs identiques partagent le même calcul.
+	 * @param starts Les noeuds de départ.
+	 * @return Les trajets dans l'ordre des noeuds de départ; null pour un départ sans espace accessible.
+	 */
+	public List<Route> findRoutes(List<Cell> starts) {
+		return this.findRoutes(starts, LocalTime.now(clock).toSecondOfDay());
+	}
+	
+	/**
+	 * Trouve le trajet vers l'espace de stationnement libre le plus proche pour plusieurs noeuds de départ
+	 * partant à une heure donnée, par une seule recherche inversée à partir de tous les espaces libres
+	 * qui s'arrête dès que tous les départs distincts sont atteints.
+	 * Contrairement à findRoute, le coût de chaque arête est celui de l'intervalle de la journée du départ
+	 * pour tout le trajet: une recherche inversée ne connaît pas l'heure à laquelle le véhicule atteint
+	 * chaque arête. Un même départ reçoit donc le même trajet quelle que soit la taille du lot, mais ce trajet
+	 * peut différer de celui de findRoute lorsqu'un profil de trafic change d'intervalle pendant le trajet.
+	 * Ces trajets ne passent pas par l'antémémoire de findRoute.
+	 * @param starts Les noeuds de départ.
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @return Les trajets dans l'ordre des noeuds de départ; null pour un départ sans espace accessible.
+	 */
+	public List<Route> findRoutes(List<Cell> starts, int departureSecond) {
+		searchLock.lock();
+		try {
+			return batchRouter.findRoutes(starts, departureSecond);
+		} finally {
+			searchLock.unlock();
+		}
+	}
+	
+	/**
+	 * Trouve les trajets vers les espaces libres les plus proches d'un noeud pour l'heure courante.
+	 * Utilisé par SpotAssigner pour construire les candidats de chaque conducteur et par reserveNearestSpot.
+	 * @param start Le noeud de départ.
+	 * @param count Le nombre maximal d'espaces.
+	 * @return Les trajets, du plus proche au plus éloigné.
+	 */
+	List<Route> findNearestFreeSpots(Cell start, int count) {
+		int departureSecond = LocalTime.now(clock).toSecondOfDay();
+		searchLock.lock();
+		try {
+			return this.getSearchEngine().findNearestFreeSpots(start, count, departureSecond);
+		} finally {
+			searchLock.unlock();
+		}
+	}
+	
+	/**
+	 * Trouve l'espace libre le plus proche d'un ensemble de noeuds de départ ayant chacun une distance initiale.
+	 * Utilisé par Garage pour chercher dans un étage à partir de ses rampes.
+	 * Sur une très grande grille, le moteur choisi peut répartir la recherche sur les coeurs disponibles.
+	 * @param sources Les noeuds de départ.
+	 * @param offsets La distance initiale de chaque noeud de départ.
+	 * @param slot L'intervalle de la journée utilisé pour le coût de toutes les arêtes.
+	 * @return Le trajet, ou null si aucun espace libre n'est accessible.
+	 */
+	Route findNearestFreeSpot(Cell[] sources, long[] offsets, int slot) {
+		searchLock.lock();
+		try {
+			return this.getSearchEngine().findNearestFreeSpot(sources, offsets, slot);
+		} finally {
+			searchLock.unlock();
+		}
+	}
+	
+	/**
+	 * Calcule la distance entre un noeud et plusieurs noeuds d'arrivée.
+	 * @param start Le noeud de départ.
+	 * @param targets Les noeuds d'arrivée.
+	 * @param slot L'intervalle de la journée utilisé pour le coût de toutes les arêtes.
+	 * @return La distance de chaque arrivée, ou Pathfinder.UNREACHED si elle n'est pas accessible.
+	 */
+	long[] findDistances(Cell start, Cell[] targets, int slot) {
+		searchLock.lock();
+		try {
+			return this.getSearchEngine().findDistances(start, targets, slot);
+		} finally {
+			searchLock.unlock();
+		}
+	}
+	
+	/**
+	 * Trouve le chemin le plus court entre deux noeuds avec les coûts d'un intervalle de la journée.
+	 * @param start Le noeud de départ.
+	 * @param end Le noeud d'arrivée.
+	 * @param slot L'intervalle de la journée utilisé pour le coût de toutes les arêtes.
+	 * @return Le chemin, ou null si l'arrivée n'est pas accessible.
+	 */
+	Route findPath(Cell start, Cell end, int slot) {
+		searchLock.lock();
+		try {
+			return this.getSearchEngine().findShortestPath(start, end, slot);
+		} finally {
+			searchLock.unlock();
+		}
+	}
+	
+	/**
+	 * Retourne le moteur des recherches, choisi par SearchEngines à la première recherche puis révisé
+	 * périodiquement selon la fréquence des changements de trafic. Les moteurs construits sont conservés.
+	 * Doit être appelée en détenant le verrou des recherches.
+	 */
+	private SearchEngine getSearchEngine() {
+		if (searchEngine == null || ++searchesSinceReview >= ENGINE_REVIEW_SEARCHES) {
+			double changesPerSearch = searchEngine == null ? 0 : (double) (trafficVersion - reviewedTrafficVersion) / searchesSinceReview;
+			searchesSinceReview = 0;
+			reviewedTrafficVersion = trafficVersion;
+			
+			String name = SearchEngines.select(this, changesPerSearch);
+			searchEngine = searchEngines.get(name);
+			if (searchEngine == null) {
+				searchEngine = SearchEngines.create(name, this);
+				searchEngines.put(name, searchEngine);
+			}
+		}
+		return searchEngine;
+	}
+	
+	/**
+	 * Trouve l'espace de stationnement libre le plus proche et le réserve.
+	 * Si un autre conducteur réserve l'espace entre la recherche et la réservation,
+	 * la recherche est reprise: le changement de statut invalide le trajet conservé.
+	 * Après RESERVE_ATTEMPTS échecs, les espaces libres les plus proches sont essayés dans l'ordre,
+	 * ce qui borne le travail lorsque les réservations concurrentes sont nombreuses.
+	 * @param start Le noeud de départ.
+	 * @return Le trajet vers l'espace réservé, ou null si aucun espace libre n'est accessible ou si tous
+	 * les espaces essayés ont été pris entre-temps.
+	 */
+	public Route reserveNearestSpot(Cell start) {
+		return this.reserveNearestSpot(start, null);
+	}
+	
+	/**
+	 * Trouve l'espace de stationnement libre le plus proche et le réserve, en s'arrêtant si le contrôle l'exige.
+	 * La réservation passe par reserveSpot: avec une occupation partagée, un espace réservé entre-temps
+	 * par un autre processus est refusé et la recherche est reprise.
+	 * @param start Le noeud de départ.
+	 * @param control Le contrôle de la recherche, ou null pour une recherche complète.
+	 * @return Le trajet vers l'espace réservé, ou null si aucun espace libre n'est accessible, si la recherche
+	 * a été arrêtée avant d'en atteindre un ou si tous les espaces essayés ont été pris entre-temps.
+	 */
+	public Route reserveNearestSpot(Cell start, SearchControl control) {
+		for (int attempt = 0; attempt < RESERVE_ATTEMPTS; attempt++) {
+			Route route = this.findRoute(start, control);
+			if (route == null || this.reserveSpot((Spot) route.getDestination())) {
+				return route;
+			}
+			if (control != null && control.isCancelled()) {
+				return null;
+			}
+		}
+		
+		for (Route route : this.findNearestFreeSpots(start, RESERVE_ATTEMPTS * 4)) {
+			if (this.reserveSpot((Spot) route.getDestination())) {
+				return route;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Transmet un changement de statut d'un espace de stationnement à tous les observateurs de la grille.
+	 * @param spot L'espace de stationnement modifié.
+	 * @param previous Le statut avant le changement.
+	 * @param status Le nouveau statut.
+	 */
+	private void fireStatusChanged(Spot spot, Status previous, Status status) {
+		spotCounts.decrementAndGet(previous.ordinal());
+		spotCounts.incrementAndGet(status.ordinal());
+		
+		for (OccupancyListener listener : occupancyListeners) {
+			listener.statusChanged(spot, previous, status);
+		}
+		
+		// Seul l'indicateur est modifié: l'image est reconstruite par le minuteur d'affichage
+		this.publishSnapshot();
+	}
+	
+	/**
+	 * Retourne le prochain pas de la simulation coopérative, compté depuis l'origine du planificateur.
+	 * @param planner Le planificateur.
+	 * @return Le pas de temps, au moins 1.
+	 */
+	int nextTick(CooperativePlanner planner) {
+		return (int) (Math.max(0, clock.millis() - planner.getEpochMillis()) / STEP_MILLIS) + 1;
+	}
+	
+	/**
+	 * Retourne le délai avant le début d'un pas de la simulation coopérative.
+	 * @param planner Le planificateur.
+	 * @param tick Le pas de temps.
+	 * @return Le délai en millisecondes, 0 si le pas est commencé.
+	 */
+	long millisUntil(CooperativePlanner planner, int tick) {
+		return Math.max(0, planner.getEpochMillis() + tick * STEP_MILLIS - clock.millis());
+	}
+	
 	/**
 	 * Exécute la recherche de chemin le plus court. Utilise un SwingWorker pour effectué la recherche à l'aide de threads.
+	 * Le véhicule trouvé est ensuite confié au fil de simulation de la grille, qui fait avancer tous les véhicules
+	 * au même pas: plusieurs véhicules peuvent se déplacer en même temps, et l'interface contrôle le dernier lancé.
 	 * @param mapPanel L'instance d'un JPanel qui contient la grille.
 	 */
 	public void executeSearch(JPanel mapPanel, JPanel buttonPanel) {
 		Grid that = this;
-		SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
-			protected Void doInBackground() throws SpotTakenException {
-				for (int i = 0; i < rows; i++) {
-					for (int j = 0; j < columns; j++) {
-						Cell c = cells[i][j];
-						if (c instanceof Spot && ((Spot) c).getStatus() == Status.FREE) {
-							ArrayList<Cell> path = pathfinder.findShortestPath(startCell, c, that);
-							if (shortestPath.size() == 0) {
-								shortestPath = path;
-							} else {
-								double previousPathDistanceFromStart = shortestPath.get(shortestPath.size() - 1).getDistanceFromStart();
-								double pathDistanceFromStart = path.get(path.size() - 1).getDistanceFromStart();
-								if (pathDistanceFromStart < previousPathDistanceFromStart) {
-									shortestPath = path;
-								}
-							}
-						}
-					}
+		Vehicle vehicle = new Vehicle(startCell);
+		activeVehicle = vehicle;
+		this.buttonPanel = buttonPanel;
+		
+		// Le planificateur coopératif réserve l'espace et un noeud par pas de temps, à partir du prochain pas
+		CooperativePlanner planner = cooperativePlanner;
+		
+		SwingWorker<Route, Void> worker = new SwingWorker<Route, Void>() {
+			protected Route doInBackground() {
+				if (planner != null) {
+					int startTick = that.nextTick(planner);
+					planner.expireBefore(startTick);
+					return planner.plan(vehicle.getStart(), startTick, LocalTime.now(clock).toSecondOfDay());
 				}
 				
-				long currentTime = System.currentTimeMillis();
-				ArrayList<Cell> shortestPathCopy = new ArrayList<Cell>(shortestPath);
-				isMoving = true;
-				((Spot) shortestPathCopy.get(shortestPath.size() - 1)).setStatus(Status.RESERVED);
-				
-				do {
-					long timeSinceLastStep = System.currentTimeMillis() - currentTime;
-					if (timeSinceLastStep >= 250) {
-						currentTime = System.currentTimeMillis();
-						
-						// Simulation du scénario où un conducteur se fait voler sa place réservée
-						double exceptionSimulate = Math.random() * 100;
-						if (exceptionSimulate >= 97.5) {
-							throw new SpotTakenException();
-						}
-						
-						if (shortestPathCopy.get(0) != null) {
-							currentCell = shortestPathCopy.get(0);
-							
-							currentCell.setColor(Color.WHITE);
-							if (currentCell instanceof Spot) {
-								((Spot) currentCell).setStatus(Status.OCCUPIED);
-							}
-							shortestPathCopy.remove(0);
-							
-							mapPanel.repaint();
-						} else {
-							isMoving = false;
-						}
-					}
-				} while(isMoving);
-				
-				return null;
+				// Un espace pris entre-temps, par ce processus ou un autre qui partage l'occupation, relance la recherche
+				return that.reserveNearestSpot(vehicle.getStart(), vehicle.getSearch());
 			}
 			
 			@Override
 			protected void done() {
-		        if(!super.isCancelled()) {
-		            try {
-						super.get();
-					} catch (InterruptedException | ExecutionException e) {
-						if (e.getCause() instanceof SpotTakenException) {
-							((Spot) shortestPath.get(shortestPath.size() - 1)).setStatus(Status.OCCUPIED);
-							that.stopSearch(mapPanel);
-							that.setStartCell(currentCell);
-							currentCell.setColor(Color.BLUE);
-							
-							that.reset();
-							
-							for (Component c : buttonPanel.getComponents()) {
-								if (c instanceof JButton) {
-									JButton button = (JButton) c;
-									if (button.getText().equals("Recherche")) {
-										button.setEnabled(true);
-									}
-									if (button.getText().equals("Annuler/Réinitialiser")) {
-										button.setEnabled(false);
-									}
-								}
-							}
-							
-							mapPanel.repaint();
-							JOptionPane.showMessageDialog(null, "Votre espace réservé n'est plus disponible. Veuillez relancer la recherche.", e.getCause().getMessage(), JOptionPane.ERROR_MESSAGE);
-						}
+				Route route;
+				try {
+					route = super.get();
+				} catch (InterruptedException | ExecutionException e) {
+					System.out.println("Search failed: " + e);
+					return;
+				}
+				
+				// L'arrêt et la fin de la recherche s'exécutent tous deux sur le fil de l'interface
+				if (route != null && vehicle.getSearch().isCancelled()) {
+					if (planner != null) {
+						planner.release(route);
 					}
-		        }
+					((Spot) route.getDestination()).setStatus(Status.FREE);
+					return;
+				}
+				if (route == null) {
+					if (!vehicle.getSearch().isCancelled()) {
+						JOptionPane.showMessageDialog(null, "Aucun espace de stationnement n'est disponible.", "Recherche", JOptionPane.INFORMATION_MESSAGE);
+					}
+					return;
+				}
+				
+				vehicle.setRoute(route);
+				if (planner != null) {
+					// Le départ est retardé tant qu'un autre véhicule occupe le noeud de départ
+					vehicle.schedule(planner, planner.getStartTick(route));
+				}
+				vehicles.add(vehicle);
+				that.startSimulation();
+				that.publishSnapshot();
 			}
 		};
 		
@@ -276,12 +934,124 @@ public class Grid extends JPanel {
 	}
 	
 	/**
-	 * Arrête la recherche de chemin le plus court.
+	 * Démarre le fil de simulation au premier véhicule. Appelée par le fil de l'interface.
+	 */
+	private void startSimulation() {
+		if (simulation == null) {
+			simulation = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "vehicle-simulation");
+				thread.setDaemon(true);
+				return thread;
+			});
+			simulation.scheduleAtFixedRate(this::simulationStep, STEP_MILLIS, STEP_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Fait avancer tous les véhicules en mouvement d'un pas de la simulation, puis retire ceux qui sont
+	 * arrivés ou arrêtés. Un véhicule planifié de façon coopérative suit l'horloge de son planificateur:
+	 * il atteint le noeud i de son trajet au pas de départ plus i, comme ses réservations le prévoient.
+	 */
+	private void simulationStep() {
+		for (Vehicle vehicle : vehicles) {
+			CooperativePlanner planner = vehicle.getPlanner();
+			try {
+				int steps = planner != null ? this.nextTick(planner) - vehicle.getDepartureTick() - vehicle.getSteps() : 1;
+				for (int step = 0; step < steps && vehicle.isMoving(); step++) {
+					this.moveVehicle(vehicle);
+				}
+			} catch (SpotTakenException e) {
+				((Spot) vehicle.getRoute().getDestination()).setStatus(Status.OCCUPIED);
+				this.stopVehicle(vehicle);
+				SwingUtilities.invokeLater(() -> this.spotTaken(vehicle, e));
+			} catch (RuntimeException e) {
+				// Une erreur ne doit pas arrêter la simulation des autres véhicules
+				System.out.println("Vehicle simulation failed: " + e);
+				this.stopVehicle(vehicle);
+			}
+			
+			if (!vehicle.isMoving()) {
+				vehicles.remove(vehicle);
+				if (planner != null) {
+					planner.release(vehicle.getRoute());
+				}
+			}
+		}
+		this.publishSnapshot();
+	}
+	
+	/**
+	 * Avance un véhicule d'un noeud et marque l'espace atteint comme occupé.
+	 * @throws SpotTakenException Si un autre conducteur a pris l'espace réservé.
+	 */
+	private void moveVehicle(Vehicle vehicle) throws SpotTakenException {
+		// Simulation du scénario où un conducteur se fait voler sa place réservée
+		double exceptionSimulate = Math.random() * 100;
+		if (exceptionSimulate >= 97.5) {
+			throw new SpotTakenException();
+		}
+		
+		Cell cell = vehicle.advance();
+		if (cell != null) {
+			cell.setColor(Color.WHITE);
+			if (cell instanceof Spot) {
+				((Spot) cell).setStatus(Status.OCCUPIED);
+			}
+		}
+	}
+	
+	/**
+	 * Signale à l'interface que l'espace réservé du véhicule a été pris. Appelée par le fil de l'interface.
+	 */
+	private void spotTaken(Vehicle vehicle, SpotTakenException e) {
+		if (activeVehicle != vehicle) {
+			// Un autre véhicule est contrôlé par l'interface
+			return;
+		}
+		
+		Cell currentCell = vehicle.getCurrentCell();
+		this.setStartCell(currentCell);
+		currentCell.setColor(Color.BLUE);
+		
+		this.reset();
+		
+		for (Component c : buttonPanel.getComponents()) {
+			if (c instanceof JButton) {
+				JButton button = (JButton) c;
+				if (button.getText().equals("Recherche")) {
+					button.setEnabled(true);
+				}
+				if (button.getText().equals("Annuler/Réinitialiser")) {
+					button.setEnabled(false);
+				}
+			}
+		}
+		
+		this.publishSnapshot();
+		JOptionPane.showMessageDialog(null, "Votre espace réservé n'est plus disponible. Veuillez relancer la recherche.", e.getMessage(), JOptionPane.ERROR_MESSAGE);
+	}
+	
+	/**
+	 * Arrête la recherche de chemin le plus court. Une recherche encore en cours est annulée
+	 * et s'arrête sans réserver d'espace.
 	 * @param mapPanel L'instance d'un JPanel qui contient la grille.
 	 */
 	public void stopSearch(JPanel mapPanel) {
-		isMoving = false;
-		for (Cell c : shortestPath) {
+		Vehicle vehicle = activeVehicle;
+		if (vehicle != null) {
+			this.stopVehicle(vehicle);
+		}
+		mapPanel.repaint();		
+	}
+	
+	/**
+	 * Arrête un véhicule, rétablit la couleur de son trajet et libère son espace réservé.
+	 */
+	private void stopVehicle(Vehicle vehicle) {
+		vehicle.stop();
+		Route route = vehicle.getRoute();
+		for (int i = 0; route != null && i < route.getLength(); i++) {
+			Cell c = route.getCell(i);
 			if (c instanceof Road) {
 				((Road) c).resetColor();
 			}
@@ -290,21 +1060,23 @@ public class Grid extends JPanel {
 				((Spot) c).setStatus(Status.FREE);
 			}
 		}
-		mapPanel.repaint();		
+		this.publishSnapshot();
 	}
 	
 	
 	@Override
 	/**
-	 * Réécriture de la méthode paintComponent héritée de JPanel pour dessiner chaque noeud.
+	 * Réécriture de la méthode paintComponent héritée de JPanel pour dessiner la dernière image publiée.
+	 * Le rendu ne lit jamais les noeuds directement.
 	 * @param g L'objet Graphics utilisé pour dessiner dans le JPanel.
 	 */
 	public void paintComponent(Graphics g) {		
-		for (int i = 0; i < rows; i++) {
-			for (int j = 0; j < columns; j++) {
-				cells[i][j].draw(g);
-			}
+		RenderSnapshot snapshot = renderSnapshot;
+		if (snapshot == null) {
+			// Première image, construite sur le fil de l'interface avant la première trame
+			snapshot = this.captureSnapshot();
+			renderSnapshot = snapshot;
 		}
+		snapshot.paint(g);
 	}
-
 }
@@ -0,0 +1,290 @@
+package com.coggers.parking;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * Génère des cartes de stationnement synthétiques dans le format de MapLoader, pour les essais à grande échelle.
+ * Le stationnement est entouré d'une route périphérique, découpé en îlots par des allées transversales
+ * et formé de rangées de cases en paires dos à dos, séparées par une allée de circulation:
+ * <pre>
+ * route  route  route  route
+ * case   case   case   route
+ * case   case   case   route
+ * allée  allée  allée  route
+ * </pre>
+ * Quelques cases sont remplacées par des murs (piliers, terre-pleins). L'entrée est au coin
+ * supérieur gauche. Les codes sont ceux de la carte: 0 mur, 1 à 100 trafic, 200 libre, 300 occupé.
+ * <p>
+ * La carte est écrite rangée par rangée: seule la rangée courante est en mémoire, ce qui permet
+ * de générer des cartes de 20 000 x 20 000. Chaque rangée a son propre générateur dérivé de la
+ * graine, ce qui rend le résultat identique d'une exécution à l'autre.
+ * <p>
+ * Utilisation: MapGenerator rangées colonnes fichier [--seed n] [--occupancy 0.7]
+ * [--occupancy-model uniform|entrance] [--traffic min-max] [--traffic-model uniform|arterial]
+ * [--block largeur] [--pillars 0.02]
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class MapGenerator {
+	/**
+	 * La répartition des espaces occupés.
+	 */
+	public enum OccupancyModel {
+		/**
+		 * Chaque espace est occupé avec la même probabilité.
+		 */
+		UNIFORM,
+		/**
+		 * Les espaces proches de l'entrée sont plus souvent occupés; le taux moyen est conservé.
+		 */
+		ENTRANCE
+	}
+
+	/**
+	 * La répartition du trafic sur les routes.
+	 */
+	public enum TrafficModel {
+		/**
+		 * Chaque route reçoit un coefficient aléatoire dans l'intervalle.
+		 */
+		UNIFORM,
+		/**
+		 * La route périphérique et les allées transversales sont plus chargées que les allées
+		 * de circulation, et le trafic augmente à l'approche de l'entrée.
+		 */
+		ARTERIAL
+	}
+
+	private int rows;
+	private int columns;
+	private long seed;
+	private double occupancy;
+	private OccupancyModel occupancyModel;
+	private int minTraffic;
+	private int maxTraffic;
+	private TrafficModel trafficModel;
+	private int blockWidth;
+	private double pillars;
+
+	/**
+	 * Construit un générateur avec les paramètres par défaut: 70 % d'occupation uniforme,
+	 * trafic de 1 à 40 réparti par artère, îlots de 24 colonnes et 2 % de piliers.
+	 * @param rows Le nombre de rangées.
+	 * @param columns Le nombre de colonnes.
+	 * @param seed La graine du générateur.
+	 */
+	public MapGenerator(int rows, int columns, long seed) {
+		if (rows < 3 || columns < 3) {
+			throw new IllegalArgumentException("Une carte doit avoir au moins 3 rangées et 3 colonnes");
+		}
+		this.rows = rows;
+		this.columns = columns;
+		this.seed = seed;
+		this.occupancy = 0.7;
+		this.occupancyModel = OccupancyModel.UNIFORM;
+		this.minTraffic = 1;
+		this.maxTraffic = 40;
+		this.trafficModel = TrafficModel.ARTERIAL;
+		this.blockWidth = 24;
+		this.pillars = 0.02;
+	}
+
+	/**
+	 * Assigne la proportion moyenne d'espaces occupés et leur répartition.
+	 * @param occupancy La proportion d'espaces occupés (0 à 1).
+	 * @param model La répartition des espaces occupés.
+	 */
+	public void setOccupancy(double occupancy, OccupancyModel model) {
+		if (occupancy < 0 || occupancy > 1) {
+			throw new IllegalArgumentException("Taux d'occupation invalide: " + occupancy);
+		}
+		this.occupancy = occupancy;
+		this.occupancyModel = model;
+	}
+
+	/**
+	 * Assigne l'intervalle des coefficients de trafic et leur répartition.
+	 * @param min Le coefficient minimal (au moins 1).
+	 * @param max Le coefficient maximal (au plus 100).
+	 * @param model La répartition du trafic.
+	 */
+	public void setTraffic(int min, int max, TrafficModel model) {
+		if (min < 1 || max > 100 || min > max) {
+			throw new IllegalArgumentException("Intervalle de trafic invalide: " + min + "-" + max);
+		}
+		this.minTraffic = min;
+		this.maxTraffic = max;
+		this.trafficModel = model;
+	}
+
+	/**
+	 * Assigne la largeur des îlots, c'est-à-dire l'écart entre deux allées transversales.
+	 * @param blockWidth La largeur d'un îlot en colonnes (au moins 2).
+	 */
+	public void setBlockWidth(int blockWidth) {
+		if (blockWidth < 2) {
+			throw new IllegalArgumentException("Largeur d'îlot invalide: " + blockWidth);
+		}
+		this.blockWidth = blockWidth;
+	}
+
+	/**
+	 * Assigne la proportion de cases remplacées par des murs.
+	 * @param pillars La proportion de piliers (0 à 1).
+	 */
+	public void setPillars(double pillars) {
+		if (pillars < 0 || pillars > 1) {
+			throw new IllegalArgumentException("Proportion de piliers invalide: " + pillars);
+		}
+		this.pillars = pillars;
+	}
+
+	/**
+	 * Écrit la carte, une rangée à la fois.
+	 * @param out La destination de la carte.
+	 * @throws IOException Si l'écriture échoue.
+	 */
+	public void write(Writer out) throws IOException {
+		// Chaque code occupe 3 chiffres suivis de ", " sauf le dernier de la rangée
+		char[] line = new char[columns * 5 - 2];
+		for (int i = 0; i < columns - 1; i++) {
+			line[i * 5 + 3] = ',';
+			line[i * 5 + 4] = ' ';
+		}
+
+		for (int row = 0; row < rows; row++) {
+			SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + row);
+			for (int column = 0; column < columns; column++) {
+				int code = this.cell(row, column, random);
+				line[column * 5] = (char) ('0' + code / 100);
+				line[column * 5 + 1] = (char) ('0' + code / 10 % 10);
+				line[column * 5 + 2] = (char) ('0' + code % 10);
+			}
+			out.write(line);
+			out.write('\n');
+		}
+		out.flush();
+	}
+
+	/**
+	 * Calcule le code d'un noeud.
+	 */
+	private int cell(int row, int column, SplittableRandom random) {
+		boolean perimeter = row == 0 || row == rows - 1 || column == 0 || column == columns - 1;
+		boolean crossAisle = column % blockWidth == 0;
+		if (perimeter || crossAisle) {
+			return this.traffic(row, column, true, random);
+		}
+
+		// Une allée de circulation toutes les trois rangées, deux rangées de cases entre elles
+		if (row % 3 == 0) {
+			return this.traffic(row, column, false, random);
+		}
+
+		if (random.nextDouble() < pillars) {
+			return 0;
+		}
+		return random.nextDouble() < this.occupancyAt(row, column) ? 300 : 200;
+	}
+
+	/**
+	 * Retourne la proximité de l'entrée, de 1 à l'entrée à 0 au coin opposé.
+	 */
+	private double proximity(int row, int column) {
+		return 1 - ((double) row / (rows - 1) + (double) column / (columns - 1)) / 2;
+	}
+
+	private double occupancyAt(int row, int column) {
+		if (occupancyModel == OccupancyModel.UNIFORM) {
+			return occupancy;
+		}
+
+		// La proximité moyenne vaut 1/2: le facteur vaut 1 en moyenne et le taux varie de la moitié
+		// à une fois et demie la moyenne, borné à 1
+		return Math.min(1, occupancy * (0.5 + this.proximity(row, column)));
+	}
+
+	private int traffic(int row, int column, boolean arterial, SplittableRandom random) {
+		double value;
+		if (trafficModel == TrafficModel.UNIFORM) {
+			value = random.nextDouble();
+		} else {
+			// Les artères occupent la moitié haute de l'intervalle, les allées la moitié basse
+			double band = (arterial ? 0.5 : 0) + random.nextDouble() * 0.5;
+			value = 0.7 * band + 0.3 * this.proximity(row, column);
+		}
+		return minTraffic + (int) Math.round(value * (maxTraffic - minTraffic));
+	}
+
+	/**
+	 * Point d'entrée du générateur.
+	 * @param args Les dimensions, le fichier de sortie et les options.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.out.println("Usage: MapGenerator <rows> <columns> <output> [--seed n] [--occupancy 0.7] "
+					+ "[--occupancy-model uniform|entrance] [--traffic min-max] [--traffic-model uniform|arterial] "
+					+ "[--block width] [--pillars 0.02]");
+			return;
+		}
+
+		long seed = 1;
+		double occupancy = 0.7;
+		OccupancyModel occupancyModel = OccupancyModel.UNIFORM;
+		int minTraffic = 1;
+		int maxTraffic = 40;
+		TrafficModel trafficModel = TrafficModel.ARTERIAL;
+		int blockWidth = 24;
+		double pillars = 0.02;
+
+		for (int i = 3; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--seed":
+					seed = Long.parseLong(value);
+					break;
+				case "--occupancy":
+					occupancy = Double.parseDouble(value);
+					break;
+				case "--occupancy-model":
+					occupancyModel = OccupancyModel.valueOf(value.toUpperCase());
+					break;
+				case "--traffic":
+					String bounds[] = value.split("-");
+					minTraffic = Integer.parseInt(bounds[0]);
+					maxTraffic = Integer.parseInt(bounds[1]);
+					break;
+				case "--traffic-model":
+					trafficModel = TrafficModel.valueOf(value.toUpperCase());
+					break;
+				case "--block":
+					blockWidth = Integer.parseInt(value);
+					break;
+				case "--pillars":
+					pillars = Double.parseDouble(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Option inconnue: " + args[i]);
+			}
+		}
+
+		MapGenerator generator = new MapGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]), seed);
+		generator.setOccupancy(occupancy, occupancyModel);
+		generator.setTraffic(minTraffic, maxTraffic, trafficModel);
+		generator.setBlockWidth(blockWidth);
+		generator.setPillars(pillars);
+
+		try (BufferedWriter out = Files.newBufferedWriter(Paths.get(args[2]), StandardCharsets.US_ASCII)) {
+			generator.write(out);
+		}
+	}
+}
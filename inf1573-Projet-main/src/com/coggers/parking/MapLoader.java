@@ -0,0 +1,130 @@
+package com.coggers.parking;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Lit les fichiers de carte et de profils de trafic.
+ * Partagée par l'interface graphique et par les modes sans interface.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class MapLoader {
+	/**
+	 * Lit un fichier externe et construit la représentation d'une carte à l'aide d'une matrice.
+	 * @param mapInput Le contenu du fichier de carte.
+	 * @return Une matrice d'entiers
+	 */
+	public static int[][] readMap(InputStream mapInput) {
+		ArrayList<int[]> mapList = new ArrayList<int[]>();
+
+		Scanner reader = new Scanner(mapInput);
+
+		try {
+			while (reader.hasNextLine()) {
+				String data = reader.nextLine();
+				String tokens[] = data.split(", ");
+				int numbers[] = new int[tokens.length];
+
+			    for (int i = 0; i < tokens.length; i++) {
+			        numbers[i] = Integer.parseInt(tokens[i]);
+			    }
+
+			    mapList.add(numbers);
+			}
+
+			reader.close();
+
+			int map[][] = new int[mapList.size()][mapList.get(0).length];
+			for (int i = 0; i < mapList.size(); i++) {
+				map[i] = mapList.get(i);
+			}
+
+			return map;
+		}  catch (IllegalStateException e) {
+	      System.out.println("Map could not be read.");
+	      return new int[0][0];
+	    }
+	}
+
+	/**
+	 * Lit un fichier de carte à plusieurs étages. Les étages sont écrits l'un après l'autre dans le
+	 * format de readMap, du rez-de-chaussée vers le haut, et sont séparés par une ligne vide.
+	 * @param mapInput Le contenu du fichier de carte.
+	 * @return La matrice de chaque étage.
+	 */
+	public static List<int[][]> readFloors(InputStream mapInput) {
+		List<int[][]> floors = new ArrayList<int[][]>();
+		StringBuilder floor = new StringBuilder();
+
+		Scanner reader = new Scanner(mapInput);
+		try {
+			while (reader.hasNextLine()) {
+				String data = reader.nextLine();
+				if (data.trim().isEmpty()) {
+					if (floor.length() > 0) {
+						floors.add(readMap(new ByteArrayInputStream(floor.toString().getBytes(StandardCharsets.UTF_8))));
+						floor.setLength(0);
+					}
+				} else {
+					floor.append(data).append('\n');
+				}
+			}
+			reader.close();
+
+			if (floor.length() > 0) {
+				floors.add(readMap(new ByteArrayInputStream(floor.toString().getBytes(StandardCharsets.UTF_8))));
+			}
+		} catch (IllegalStateException e) {
+			System.out.println("Map could not be read.");
+		}
+		return floors;
+	}
+
+	/**
+	 * Lit un fichier de profils de trafic et les assigne aux routes de la grille.
+	 * Chaque ligne contient la rangée, la colonne puis les coefficients de trafic de la journée
+	 * (24 valeurs horaires ou 96 valeurs aux 15 minutes).
+	 * @param profileInput Le contenu du fichier de profils, ou null s'il n'existe pas.
+	 * @param grid La grille à mettre à jour.
+	 */
+	public static void readTrafficProfiles(InputStream profileInput, Grid grid) {
+		if (profileInput == null) {
+			return;
+		}
+
+		Scanner reader = new Scanner(profileInput);
+		try {
+			while (reader.hasNextLine()) {
+				String data = reader.nextLine().trim();
+				if (data.isEmpty()) {
+					continue;
+				}
+
+				String tokens[] = data.split(", ");
+				int row = Integer.parseInt(tokens[0]);
+				int column = Integer.parseInt(tokens[1]);
+				int values[] = new int[tokens.length - 2];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = Integer.parseInt(tokens[i + 2]);
+				}
+
+				Cell cell = grid.getCell(row, column);
+				if (cell instanceof Road) {
+					grid.setTrafficProfile((Road) cell, new TrafficProfile(values));
+				}
+			}
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			System.out.println("Traffic profiles could not be read.");
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package com.coggers.parking;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Conserve l'historique d'occupation d'une grille dans une mémoire de taille fixe, hors du tas.
+ * Deux structures circulaires sont alimentées à chaque changement de statut:
+ * <ul>
+ * <li>les transitions, 24 octets chacune (numéro d'écriture, instant en ms, indice du noeud, statut précédent,
+ * nouveau statut), dont les plus anciennes sont écrasées lorsque la capacité est atteinte;</li>
+ * <li>pour chaque zone rectangulaire de la grille et chaque intervalle de 15 minutes de la dernière semaine,
+ * le temps cumulé d'occupation de ses espaces (espace-millisecondes).</li>
+ * </ul>
+ * Un espace est compté comme occupé dès qu'il n'est plus libre (occupé ou réservé).
+ * Le taux d'occupation d'une zone par intervalle est lu directement des cumuls, sans parcourir les
+ * transitions ni lire les noeuds de la grille. L'enregistrement d'un changement ne fait que quelques
+ * écritures en mémoire; les intervalles sans changement ne sont complétés qu'au changement suivant.
+ * <p>
+ * Les changements sont enregistrés sous le statut de l'espace verrouillé: ils ne prennent donc aucun verrou
+ * commun à toute la grille. Une transition réserve sa case par un compteur atomique et la marque de son
+ * numéro d'écriture une fois complète. Chaque zone a son propre verrou, pris seulement par les changements
+ * de la zone; les lectures des taux sont optimistes et recommencent si un changement les a croisées.
+ * <p>
+ * L'historique doit être construit pendant que l'occupation de la grille ne change pas.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class OccupancyHistory implements OccupancyListener, Closeable {
+	/**
+	 * La durée d'un intervalle des cumuls, en millisecondes.
+	 */
+	public static final long INTERVAL_MILLIS = 15 * 60 * 1000;
+
+	/**
+	 * Le nombre d'intervalles conservés pour chaque zone: une semaine.
+	 */
+	public static final int RETAINED_INTERVALS = 7 * 24 * 4;
+
+	static final int RECORD_SIZE = 24;
+
+	// Lectures optimistes tentées avant de prendre le verrou de la zone
+	private static final int OPTIMISTIC_READS = 4;
+
+	private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	/**
+	 * Reçoit les transitions lues de l'historique.
+	 */
+	public interface TransitionVisitor {
+		/**
+		 * Appelée pour chaque transition, de la plus ancienne à la plus récente.
+		 * @param timeMillis L'instant du changement, en millisecondes depuis l'époque.
+		 * @param cellIndex L'indice du noeud de l'espace de stationnement.
+		 * @param previous Le statut avant le changement.
+		 * @param status Le nouveau statut.
+		 */
+		void visit(long timeMillis, int cellIndex, Status previous, Status status);
+	}
+
+	private Grid grid;
+	private Clock clock;
+	private long startMillis;
+
+	private int zoneRows;
+	private int zoneColumns;
+	private int zonesPerRow;
+	private int[] zoneSpots;
+	private int[] zoneOccupied;
+	private long[] zoneChanged;
+	private StampedLock[] zoneLocks;
+
+	// Transitions: tampon circulaire de capacity enregistrements; chacun commence par 2n + 2 une fois
+	// la transition n complète, et par 2n + 1 pendant son écriture
+	private ByteBuffer transitions;
+	private int capacity;
+	private AtomicLong written;
+
+	// Cumuls: une case par zone et par intervalle conservé, avec le numéro de l'intervalle qu'elle contient
+	private LongBuffer occupiedMillis;
+	private LongBuffer intervals;
+
+	/**
+	 * Construit l'historique d'une grille et commence l'enregistrement de ses changements.
+	 * @param grid La grille observée.
+	 * @param zoneRows La hauteur d'une zone, en rangées.
+	 * @param zoneColumns La largeur d'une zone, en colonnes.
+	 * @param capacity Le nombre de transitions conservées.
+	 * @param clock L'horloge qui date les changements.
+	 */
+	public OccupancyHistory(Grid grid, int zoneRows, int zoneColumns, int capacity, Clock clock) {
+		if (zoneRows < 1 || zoneColumns < 1 || capacity < 1) {
+			throw new IllegalArgumentException("Dimensions de zone ou capacité invalides");
+		}
+		this.grid = grid;
+		this.clock = clock;
+		this.startMillis = clock.millis();
+		this.zoneRows = zoneRows;
+		this.zoneColumns = zoneColumns;
+		this.zonesPerRow = (grid.getColumns() + zoneColumns - 1) / zoneColumns;
+
+		int zoneCount = zonesPerRow * ((grid.getRows() + zoneRows - 1) / zoneRows);
+		this.zoneSpots = new int[zoneCount];
+		this.zoneOccupied = new int[zoneCount];
+		this.zoneChanged = new long[zoneCount];
+		Arrays.fill(zoneChanged, startMillis);
+		this.zoneLocks = new StampedLock[zoneCount];
+		for (int i = 0; i < zoneCount; i++) {
+			zoneLocks[i] = new StampedLock();
+		}
+
+		for (int i = 0; i < grid.getRows(); i++) {
+			for (int j = 0; j < grid.getColumns(); j++) {
+				Cell cell = grid.getCell(i, j);
+				if (cell instanceof Spot) {
+					int zone = this.getZone(cell);
+					zoneSpots[zone]++;
+					if (((Spot) cell).getStatus() != Status.FREE) {
+						zoneOccupied[zone]++;
+					}
+				}
+			}
+		}
+
+		if ((long) zoneCount * RETAINED_INTERVALS * Long.BYTES > Integer.MAX_VALUE || (long) capacity * RECORD_SIZE > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Historique trop grand: augmenter la taille des zones ou réduire la capacité");
+		}
+		this.capacity = capacity;
+		this.transitions = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.nativeOrder());
+		this.written = new AtomicLong();
+		this.occupiedMillis = ByteBuffer.allocateDirect(zoneCount * RETAINED_INTERVALS * Long.BYTES).asLongBuffer();
+		this.intervals = ByteBuffer.allocateDirect(zoneCount * RETAINED_INTERVALS * Long.BYTES).asLongBuffer();
+		for (int i = 0; i < intervals.capacity(); i++) {
+			intervals.put(i, -1);
+		}
+
+		grid.addOccupancyListener(this);
+	}
+
+	@Override
+	public void statusChanged(Spot spot, Status previous, Status status) {
+		long now = clock.millis();
+		long n = written.getAndIncrement();
+		int position = (int) (n % capacity) * RECORD_SIZE;
+		LONG.setOpaque(transitions, position, 2 * n + 1);
+		VarHandle.storeStoreFence();
+		transitions.putLong(position + 8, now);
+		transitions.putInt(position + 16, spot.getIndex());
+		transitions.put(position + 20, (byte) previous.ordinal());
+		transitions.put(position + 21, (byte) status.ordinal());
+		LONG.setRelease(transitions, position, 2 * n + 2);
+
+		boolean wasOccupied = previous != Status.FREE;
+		boolean occupied = status != Status.FREE;
+		if (wasOccupied != occupied) {
+			int zone = this.getZone(spot);
+			StampedLock lock = zoneLocks[zone];
+			long stamp = lock.writeLock();
+			try {
+				this.accumulate(zone, now);
+				zoneOccupied[zone] += occupied ? 1 : -1;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+	}
+
+	/**
+	 * Retourne la zone d'un noeud.
+	 * @param cell Le noeud.
+	 * @return Le numéro de la zone, en ordre de rangées.
+	 */
+	public int getZone(Cell cell) {
+		return (cell.getRow() / zoneRows) * zonesPerRow + cell.getColumn() / zoneColumns;
+	}
+
+	/**
+	 * Retourne le nombre de zones de la grille.
+	 * @return Le nombre de zones.
+	 */
+	public int getZoneCount() {
+		return zoneSpots.length;
+	}
+
+	/**
+	 * Retourne le nombre d'espaces de stationnement d'une zone.
+	 * @param zone Le numéro de la zone.
+	 * @return Le nombre d'espaces.
+	 */
+	public int getSpotCount(int zone) {
+		return zoneSpots[zone];
+	}
+
+	/**
+	 * Calcule le taux d'occupation d'une zone pour chaque intervalle de 15 minutes d'une période.
+	 * Le premier intervalle est celui qui contient le début de la période. Le taux d'un intervalle est
+	 * mesuré sur sa partie écoulée; il vaut NaN pour un intervalle hors de l'historique (avant sa
+	 * construction, plus ancien qu'une semaine ou futur) et pour une zone sans espace.
+	 * La lecture ne bloque pas les changements: elle est recommencée si un changement de la zone l'a croisée,
+	 * et ne prend le verrou de la zone qu'après plusieurs tentatives.
+	 * @param zone Le numéro de la zone.
+	 * @param fromMillis Le début de la période, en millisecondes depuis l'époque.
+	 * @param toMillis La fin de la période (exclue).
+	 * @return Le taux d'occupation (0 à 1) de chaque intervalle.
+	 */
+	public double[] getOccupancyRates(int zone, long fromMillis, long toMillis) {
+		long time = clock.millis();
+		StampedLock lock = zoneLocks[zone];
+		for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp != 0) {
+				double[] rates = this.readRates(zone, fromMillis, toMillis, time);
+				if (lock.validate(stamp)) {
+					return rates;
+				}
+			}
+			Thread.onSpinWait();
+		}
+
+		long stamp = lock.readLock();
+		try {
+			return this.readRates(zone, fromMillis, toMillis, time);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Calcule les taux d'occupation d'une zone à partir de ses cumuls. Les valeurs lues peuvent être
+	 * incohérentes si la zone change pendant la lecture; l'appelant valide alors le résultat.
+	 */
+	private double[] readRates(int zone, long fromMillis, long toMillis, long time) {
+		long changedMillis = zoneChanged[zone];
+		int occupiedSpots = zoneOccupied[zone];
+		long now = Math.max(time, changedMillis);
+		long first = Math.floorDiv(fromMillis, INTERVAL_MILLIS);
+		long last = Math.floorDiv(toMillis - 1, INTERVAL_MILLIS);
+		long oldest = Math.max(Math.floorDiv(startMillis, INTERVAL_MILLIS), now / INTERVAL_MILLIS - RETAINED_INTERVALS + 1);
+		long changed = changedMillis / INTERVAL_MILLIS;
+
+		double[] rates = new double[(int) Math.max(0, last - first + 1)];
+		for (int i = 0; i < rates.length; i++) {
+			long interval = first + i;
+			long begin = Math.max(interval * INTERVAL_MILLIS, startMillis);
+			long end = Math.min((interval + 1) * INTERVAL_MILLIS, now);
+			if (interval < oldest || end <= begin || zoneSpots[zone] == 0) {
+				rates[i] = Double.NaN;
+				continue;
+			}
+
+			// Le cumul couvre le temps jusqu'au dernier changement; l'occupation est constante depuis
+			long occupied = 0;
+			int slot = this.slot(zone, interval);
+			if (interval <= changed && intervals.get(slot) == interval) {
+				occupied = occupiedMillis.get(slot);
+			}
+			long since = Math.max(begin, changedMillis);
+			if (end > since) {
+				occupied += occupiedSpots * (end - since);
+			}
+			rates[i] = (double) occupied / ((double) zoneSpots[zone] * (end - begin));
+		}
+		return rates;
+	}
+
+	/**
+	 * Parcourt les transitions conservées à partir d'un instant, sans bloquer les changements.
+	 * Une transition en cours d'écriture ou écrasée pendant le parcours est omise.
+	 * @param fromMillis L'instant de la plus ancienne transition voulue, en millisecondes depuis l'époque.
+	 * @param visitor Le destinataire des transitions.
+	 */
+	public void forEachTransition(long fromMillis, TransitionVisitor visitor) {
+		Status[] statuses = Status.values();
+		long count = written.get();
+		for (long n = Math.max(0, count - capacity); n < count; n++) {
+			int position = (int) (n % capacity) * RECORD_SIZE;
+			if ((long) LONG.getAcquire(transitions, position) != 2 * n + 2) {
+				continue;
+			}
+			long time = transitions.getLong(position + 8);
+			int cellIndex = transitions.getInt(position + 16);
+			int previous = transitions.get(position + 20);
+			int status = transitions.get(position + 21);
+			VarHandle.loadLoadFence();
+			if ((long) LONG.getOpaque(transitions, position) != 2 * n + 2) {
+				continue;
+			}
+			if (time >= fromMillis) {
+				visitor.visit(time, cellIndex, statuses[previous], statuses[status]);
+			}
+		}
+	}
+
+	/**
+	 * Retourne le nombre total de transitions enregistrées, y compris celles qui ont été écrasées.
+	 * @return Le nombre de transitions.
+	 */
+	public long getTransitionCount() {
+		return written.get();
+	}
+
+	/**
+	 * Arrête l'enregistrement des changements de la grille.
+	 */
+	@Override
+	public void close() {
+		grid.removeOccupancyListener(this);
+	}
+
+	/**
+	 * Ajoute aux cumuls d'une zone le temps d'occupation écoulé depuis son dernier changement,
+	 * réparti entre les intervalles traversés. Doit être appelée en détenant le verrou de la zone en écriture.
+	 */
+	private void accumulate(int zone, long now) {
+		long from = zoneChanged[zone];
+		now = Math.max(now, from);
+		int count = zoneOccupied[zone];
+		if (count > 0) {
+			long last = now / INTERVAL_MILLIS;
+			long first = Math.max(from / INTERVAL_MILLIS, last - RETAINED_INTERVALS + 1);
+			for (long interval = first; interval <= last; interval++) {
+				long begin = Math.max(from, interval * INTERVAL_MILLIS);
+				long end = Math.min(now, (interval + 1) * INTERVAL_MILLIS);
+				if (end > begin) {
+					int slot = this.slot(zone, interval);
+					if (intervals.get(slot) != interval) {
+						// La case contient un intervalle de plus d'une semaine: elle est réutilisée
+						intervals.put(slot, interval);
+						occupiedMillis.put(slot, 0);
+					}
+					occupiedMillis.put(slot, occupiedMillis.get(slot) + count * (end - begin));
+				}
+			}
+		}
+		zoneChanged[zone] = now;
+	}
+
+	private int slot(int zone, long interval) {
+		return zone * RETAINED_INTERVALS + (int) (interval % RETAINED_INTERVALS);
+	}
+}
@@ -0,0 +1,308 @@
+package com.coggers.parking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Un journal binaire en écriture anticipée (write-ahead log) des changements de statut
+ * des espaces de stationnement.
+ * Chaque enregistrement occupe 5 octets: l'indice du noeud dans la grille suivi du statut.
+ * Les enregistrements sont accumulés en mémoire et écrits sur disque par groupe
+ * (group commit) par un fil d'exécution dédié, ce qui permet de n'appeler
+ * FileChannel.force qu'une seule fois pour plusieurs changements.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+class OccupancyJournal implements Closeable {
+	static final int MAGIC = 0x50574C31;
+	static final int HEADER_SIZE = 16;
+	static final int RECORD_SIZE = 5;
+
+	// Délai maximal entre deux écritures groupées
+	private static final long COMMIT_INTERVAL_MS = 5;
+	// Nombre d'enregistrements en attente qui déclenche une écriture immédiate
+	private static final int COMMIT_THRESHOLD = 4096;
+
+	private final Object lock = new Object();
+	private final Object writeLock = new Object();
+	private FileChannel channel;
+	private ByteBuffer pending;
+	private ByteBuffer writing;
+	private long appended;
+	private long committed;
+	private boolean closed;
+	private IOException failure;
+	private final Thread committer;
+
+	/**
+	 * Ouvre (ou crée) un journal pour une grille de dimensions données.
+	 * @param file Le fichier du journal.
+	 * @param rows Le nombre de rangées de la grille.
+	 * @param columns Le nombre de colonnes de la grille.
+	 * @throws IOException Si le fichier ne peut pas être ouvert.
+	 */
+	OccupancyJournal(Path file, int rows, int columns) throws IOException {
+		this.pending = ByteBuffer.allocate(COMMIT_THRESHOLD * RECORD_SIZE);
+		this.writing = ByteBuffer.allocate(COMMIT_THRESHOLD * RECORD_SIZE);
+		this.channel = open(file, rows, columns);
+
+		this.committer = new Thread(this::commitLoop, "occupancy-journal");
+		this.committer.setDaemon(true);
+		this.committer.start();
+	}
+
+	/**
+	 * Ajoute un changement de statut au journal. L'appel ne bloque pas sur le disque.
+	 * @param cellIndex L'indice du noeud (rangée * colonnes + colonne).
+	 * @param status Le nouveau statut de l'espace de stationnement.
+	 */
+	void append(int cellIndex, Status status) {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+
+			if (pending.remaining() < RECORD_SIZE) {
+				ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+				pending.flip();
+				larger.put(pending);
+				pending = larger;
+			}
+
+			pending.putInt(cellIndex);
+			pending.put((byte) status.ordinal());
+			appended++;
+
+			// Réveille le fil d'écriture au début d'un nouveau groupe ou lorsque le groupe est plein
+			if (appended - committed == 1 || appended - committed >= COMMIT_THRESHOLD) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Attend que tous les changements ajoutés avant l'appel soient écrits de façon durable.
+	 * @throws IOException Si une écriture a échoué.
+	 */
+	void sync() throws IOException {
+		synchronized (lock) {
+			long target = appended;
+			lock.notifyAll();
+			while (committed < target && failure == null && !closed) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Synchronisation du journal interrompue", e);
+				}
+			}
+
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Ferme le journal courant et poursuit l'écriture dans un nouveau fichier.
+	 * L'action fournie est exécutée pendant que les ajouts sont bloqués, ce qui permet de capturer
+	 * un état cohérent avec la frontière entre les deux fichiers.
+	 * @param next Le nouveau fichier du journal.
+	 * @param rows Le nombre de rangées de la grille.
+	 * @param columns Le nombre de colonnes de la grille.
+	 * @param atBoundary L'action exécutée à la frontière entre les deux fichiers.
+	 * @throws IOException Si l'un des fichiers ne peut pas être écrit.
+	 */
+	void rotate(Path next, int rows, int columns, Runnable atBoundary) throws IOException {
+		synchronized (writeLock) {
+			synchronized (lock) {
+				flushPending();
+				channel.force(false);
+				channel.close();
+				channel = open(next, rows, columns);
+				atBoundary.run();
+			}
+		}
+	}
+
+	@Override
+	/**
+	 * Écrit les changements en attente et ferme le journal.
+	 */
+	public void close() throws IOException {
+		synchronized (writeLock) {
+			synchronized (lock) {
+				if (closed) {
+					return;
+				}
+
+				closed = true;
+				flushPending();
+				channel.force(false);
+				channel.close();
+			}
+		}
+
+		try {
+			committer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Boucle du fil d'exécution qui écrit les groupes d'enregistrements sur disque.
+	 */
+	private void commitLoop() {
+		while (true) {
+			synchronized (lock) {
+				while (!closed && appended == committed) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				// Laisse le temps aux autres changements de rejoindre le groupe
+				if (!closed && appended - committed < COMMIT_THRESHOLD) {
+					try {
+						lock.wait(COMMIT_INTERVAL_MS);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				if (closed) {
+					return;
+				}
+			}
+
+			// Le verrou d'écriture garantit que la rotation et la fermeture n'écrivent pas
+			// de nouveaux enregistrements avant ceux du groupe courant
+			synchronized (writeLock) {
+				long batchEnd;
+				synchronized (lock) {
+					if (closed) {
+						return;
+					}
+
+					ByteBuffer swap = writing;
+					writing = pending;
+					pending = swap;
+					pending.clear();
+					batchEnd = appended;
+				}
+
+				IOException error = null;
+				try {
+					writing.flip();
+					while (writing.hasRemaining()) {
+						channel.write(writing);
+					}
+					channel.force(false);
+				} catch (IOException e) {
+					error = e;
+				}
+
+				synchronized (lock) {
+					writing.clear();
+					if (error != null) {
+						failure = error;
+					}
+					committed = Math.max(committed, batchEnd);
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Écrit immédiatement les enregistrements en attente. Doit être appelée en détenant les deux verrous.
+	 */
+	private void flushPending() throws IOException {
+		pending.flip();
+		while (pending.hasRemaining()) {
+			channel.write(pending);
+		}
+		pending.clear();
+		committed = appended;
+		lock.notifyAll();
+	}
+
+	/**
+	 * Ouvre un fichier de journal en écriture et y ajoute l'en-tête s'il est vide.
+	 */
+	private static FileChannel open(Path file, int rows, int columns) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+		if (channel.size() < HEADER_SIZE) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(rows).putInt(columns).putInt(RECORD_SIZE);
+			header.flip();
+			channel.truncate(0);
+			channel.write(header, 0);
+		}
+
+		// Un enregistrement incomplet en fin de fichier provient d'une écriture interrompue
+		long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+		channel.truncate(HEADER_SIZE + records * RECORD_SIZE);
+		channel.position(channel.size());
+		return channel;
+	}
+
+	/**
+	 * Rejoue un fichier de journal sur une grille.
+	 * @param file Le fichier du journal.
+	 * @param grid La grille à mettre à jour.
+	 * @return Le nombre d'enregistrements rejoués.
+	 * @throws IOException Si le fichier est illisible ou ne correspond pas à la grille.
+	 */
+	static long replay(Path file, Grid grid) throws IOException {
+		if (!Files.exists(file)) {
+			return 0;
+		}
+
+		Status[] statuses = Status.values();
+		long count = 0;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+			buffer.limit(HEADER_SIZE);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0);
+			buffer.flip();
+			if (buffer.remaining() < HEADER_SIZE) {
+				return 0;
+			}
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != grid.getRows() || buffer.getInt() != grid.getColumns() || buffer.getInt() != RECORD_SIZE) {
+				throw new IOException("Journal incompatible avec la carte: " + file);
+			}
+
+			buffer.clear();
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				while (buffer.remaining() >= RECORD_SIZE) {
+					int cellIndex = buffer.getInt();
+					int ordinal = buffer.get();
+					Cell cell = grid.getCell(cellIndex / grid.getColumns(), cellIndex % grid.getColumns());
+					if (cell instanceof Spot && ordinal >= 0 && ordinal < statuses.length) {
+						((Spot) cell).setStatus(statuses[ordinal]);
+						count++;
+					}
+				}
+				buffer.compact();
+			}
+		}
+
+		return count;
+	}
+}
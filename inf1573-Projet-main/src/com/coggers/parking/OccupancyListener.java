@@ -0,0 +1,21 @@
+package com.coggers.parking;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Un observateur des changements de statut des espaces de stationnement d'une grille.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+interface OccupancyListener {
+	/**
+	 * Appelée après que le statut d'un espace de stationnement ait changé.
+	 * @param spot L'espace de stationnement modifié.
+	 * @param previous Le statut avant le changement.
+	 * @param status Le nouveau statut.
+	 */
+	void statusChanged(Spot spot, Status previous, Status status);
+}
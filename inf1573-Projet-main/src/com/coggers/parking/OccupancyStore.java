@@ -0,0 +1,237 @@
+package com.coggers.parking;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Conserve l'état d'occupation d'une grille entre deux exécutions du programme.
+ * L'état est composé d'un instantané compact (2 bits par espace de stationnement) et des
+ * journaux écrits depuis cet instantané. Au démarrage, l'instantané est chargé puis la fin des
+ * journaux est rejouée. Un nouvel instantané est pris périodiquement pour borner la taille des journaux.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class OccupancyStore implements Closeable {
+	private static final int SNAPSHOT_MAGIC = 0x50534E31;
+	private static final String SNAPSHOT_FILE = "occupancy.snapshot";
+	private static final long SNAPSHOT_INTERVAL_SECONDS = 60;
+
+	private Path directory;
+	private Grid grid;
+	private long generation;
+	private OccupancyJournal journal;
+	private OccupancyListener listener;
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Construit le magasin d'état et commence la journalisation des changements de la grille.
+	 */
+	private OccupancyStore(Path directory, Grid grid, long generation) throws IOException {
+		this.directory = directory;
+		this.grid = grid;
+		this.generation = generation;
+		this.journal = new OccupancyJournal(journalFile(generation), grid.getRows(), grid.getColumns());
+
+		int columns = grid.getColumns();
+		this.listener = (spot, previous, status) -> journal.append(spot.getRow() * columns + spot.getColumn(), status);
+		grid.addOccupancyListener(listener);
+
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "occupancy-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				snapshot();
+			} catch (IOException e) {
+				System.out.println("Occupancy snapshot could not be written: " + e.getMessage());
+			}
+		}, SNAPSHOT_INTERVAL_SECONDS, SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Restaure l'état d'occupation de la grille à partir du répertoire puis journalise les changements suivants.
+	 * @param directory Le répertoire contenant l'instantané et les journaux.
+	 * @param grid La grille construite à partir de la carte.
+	 * @return Le magasin d'état attaché à la grille.
+	 * @throws IOException Si l'état ne peut pas être lu ou si le répertoire ne peut pas être créé.
+	 */
+	public static OccupancyStore open(Path directory, Grid grid) throws IOException {
+		Files.createDirectories(directory);
+
+		long generation = readSnapshot(directory.resolve(SNAPSHOT_FILE), grid);
+
+		// Les journaux plus récents que l'instantané existent si le programme s'est arrêté
+		// pendant la prise d'un instantané
+		long last = generation;
+		for (long g = generation; Files.exists(journalFile(directory, g)); g++) {
+			OccupancyJournal.replay(journalFile(directory, g), grid);
+			last = g;
+		}
+
+		return new OccupancyStore(directory, grid, last);
+	}
+
+	/**
+	 * Prend un instantané de l'état d'occupation et supprime les journaux qu'il remplace.
+	 * @throws IOException Si l'instantané ne peut pas être écrit.
+	 */
+	public synchronized void snapshot() throws IOException {
+		long next = generation + 1;
+		byte[][] captured = new byte[1][];
+
+		// L'état est capturé pendant que les ajouts au journal sont bloqués: tout changement
+		// ultérieur se retrouve dans le nouveau journal
+		journal.rotate(journalFile(next), grid.getRows(), grid.getColumns(), () -> captured[0] = capture());
+
+		Path target = directory.resolve(SNAPSHOT_FILE);
+		Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+		ByteBuffer buffer = ByteBuffer.allocate(4 * Integer.BYTES + Long.BYTES + captured[0].length);
+		buffer.putInt(SNAPSHOT_MAGIC);
+		buffer.putInt(grid.getRows());
+		buffer.putInt(grid.getColumns());
+		buffer.putLong(next);
+		buffer.putInt(captured[0].length);
+		buffer.put(captured[0]);
+		buffer.flip();
+
+		// L'instantané doit être sur le disque avant de remplacer l'ancien, sinon une panne
+		// pourrait laisser un fichier vide à la place de l'instantané
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		// Le renommage doit aussi être durable avant de supprimer les journaux qu'il remplace
+		forceDirectory();
+
+		for (long g = generation; g >= 0 && Files.deleteIfExists(journalFile(g)); g--);
+		generation = next;
+	}
+
+	/**
+	 * Force l'écriture sur le disque des entrées du répertoire, dont le renommage de l'instantané.
+	 * Certains systèmes ne permettent pas d'ouvrir un répertoire; le renommage y est alors
+	 * seulement aussi durable que le système de fichiers le garantit.
+	 * @throws IOException Si le répertoire ne peut pas être écrit sur le disque.
+	 */
+	private void forceDirectory() throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(directory, StandardOpenOption.READ);
+		} catch (IOException | UnsupportedOperationException e) {
+			return;
+		}
+		try (channel) {
+			channel.force(true);
+		}
+	}
+
+	@Override
+	/**
+	 * Arrête la journalisation, écrit les changements en attente et prend un dernier instantané.
+	 */
+	public synchronized void close() throws IOException {
+		scheduler.shutdownNow();
+		snapshot();
+		grid.removeOccupancyListener(listener);
+		journal.close();
+	}
+
+	/**
+	 * Encode le statut de chaque espace de stationnement de la grille sur 2 bits, dans l'ordre des rangées.
+	 * @return Les statuts encodés.
+	 */
+	private byte[] capture() {
+		int count = 0;
+		for (int i = 0; i < grid.getRows(); i++) {
+			for (int j = 0; j < grid.getColumns(); j++) {
+				if (grid.getCell(i, j) instanceof Spot) {
+					count++;
+				}
+			}
+		}
+
+		byte[] packed = new byte[(count + 3) / 4];
+		int n = 0;
+		for (int i = 0; i < grid.getRows(); i++) {
+			for (int j = 0; j < grid.getColumns(); j++) {
+				Cell cell = grid.getCell(i, j);
+				if (cell instanceof Spot) {
+					packed[n >> 2] |= ((Spot) cell).getStatus().ordinal() << ((n & 3) << 1);
+					n++;
+				}
+			}
+		}
+		return packed;
+	}
+
+	/**
+	 * Applique un instantané à la grille.
+	 * @return La génération du journal qui suit l'instantané, ou 0 s'il n'y a pas d'instantané.
+	 */
+	private static long readSnapshot(Path file, Grid grid) throws IOException {
+		if (!Files.exists(file)) {
+			return 0;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != grid.getRows() || in.readInt() != grid.getColumns()) {
+				throw new IOException("Instantané incompatible avec la carte: " + file);
+			}
+
+			long generation = in.readLong();
+			byte[] packed = new byte[in.readInt()];
+			in.readFully(packed);
+
+			Status[] statuses = Status.values();
+			int n = 0;
+			for (int i = 0; i < grid.getRows(); i++) {
+				for (int j = 0; j < grid.getColumns(); j++) {
+					Cell cell = grid.getCell(i, j);
+					if (cell instanceof Spot) {
+						if (n >> 2 >= packed.length) {
+							throw new IOException("Instantané incompatible avec la carte: " + file);
+						}
+						int ordinal = (packed[n >> 2] >> ((n & 3) << 1)) & 3;
+						if (ordinal >= statuses.length) {
+							throw new IOException("Instantané corrompu: " + file);
+						}
+						((Spot) cell).setStatus(statuses[ordinal]);
+						n++;
+					}
+				}
+			}
+			return generation;
+		}
+	}
+
+	private Path journalFile(long generation) {
+		return journalFile(directory, generation);
+	}
+
+	private static Path journalFile(Path directory, long generation) {
+		return directory.resolve("occupancy." + generation + ".wal");
+	}
+}
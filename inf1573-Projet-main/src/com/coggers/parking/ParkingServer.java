@@ -0,0 +1,469 @@
+package com.coggers.parking;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.coggers.parking.Spot.Status;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Un service HTTP local qui répond aux requêtes de stationnement sans interface graphique.
+ * Les réponses sont en JSON compact. Points d'accès:
+ * <ul>
+ * <li>GET /nearest?row=&amp;column=[&amp;time=][&amp;budget=] l'espace libre le plus proche et sa distance;</li>
+ * <li>GET /route?row=&amp;column=[&amp;time=][&amp;budget=] le trajet complet vers cet espace;</li>
+ * <li>POST /nearest-batch l'espace libre le plus proche de plusieurs départs (une ligne "rangée,colonne" par départ),
+ * calculés ensemble avec les coûts de l'intervalle du départ pour tout le trajet (voir Grid.findRoutes);</li>
+ * <li>POST /reserve?row=&amp;column= réserve un espace libre proche du noeud de départ; les réservations
+ * simultanées sont attribuées ensemble par SpotAssigner pour minimiser la distance totale;</li>
+ * <li>POST /release?row=&amp;column= annule la réservation d'un espace;</li>
+ * <li>GET /occupancy[?row=&amp;column=] le nombre d'espaces par statut, ou le statut d'un espace;</li>
+ * <li>GET /history?row=&amp;column=[&amp;hours=24] le taux d'occupation par 15 minutes de la zone qui contient le noeud,
+ * depuis le nombre d'heures demandé (au plus une semaine).</li>
+ * <li>GET /garage?floor=&amp;row=&amp;column=[&amp;time=] l'espace libre le plus proche de tout le garage et le
+ * trajet, un tronçon par étage, lorsqu'un garage à plusieurs étages est servi (voir setGarage).</li>
+ * </ul>
+ * Les recherches de /nearest et /route sont bornées par un délai (paramètre budget, en millisecondes):
+ * le délai court à partir de l'arrivée de la requête et compte l'attente des autres recherches. À l'échéance,
+ * le meilleur espace atteint est retourné avec "optimal":false; si aucun espace n'a encore été atteint, la réponse
+ * est 503 avec "optimal":false plutôt que 404, car le stationnement n'est pas forcément plein.
+ * Chaque requête est traitée par un fil virtuel lorsque la machine virtuelle le permet (Java 21 et plus),
+ * sinon par une réserve de fils qui s'agrandit selon la demande. Les réponses tirées de l'antémémoire des
+ * trajets sont servies en parallèle; les recherches, elles, passent une à la fois par la grille.
+ * Une erreur imprévue donne une réponse 500.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class ParkingServer {
+	// File d'attente des connexions pour absorber les rafales des tests de charge
+	private static final int BACKLOG = 4096;
+	
+	// Les réservations reçues pendant cette fenêtre sont attribuées ensemble
+	private static final long ASSIGNMENT_WINDOW_MS = 20;
+	private static final int ASSIGNMENT_CANDIDATES = 8;
+
+	// Délai accordé par défaut à une recherche, pour borner la latence sur les très grandes cartes
+	private static final long SEARCH_BUDGET_MS = 250;
+
+	// Les zones de l'historique sont des carrés d'au moins 32 noeuds, au plus 64 par côté de la grille
+	private static final int HISTORY_ZONE_SIZE = 32;
+	private static final int HISTORY_ZONES_PER_SIDE = 64;
+	private static final int HISTORY_CAPACITY = 1 << 20;
+
+	private Grid grid;
+	private HttpServer server;
+	private ExecutorService executor;
+	private SpotAssigner assigner;
+	private OccupancyHistory history;
+	private volatile Garage garage;
+
+	/**
+	 * Construit le service pour une grille.
+	 * @param grid La grille interrogée.
+	 * @param port Le port d'écoute sur l'interface locale (0 pour un port libre).
+	 * @throws IOException Si le port ne peut pas être ouvert.
+	 */
+	public ParkingServer(Grid grid, int port) throws IOException {
+		this.grid = grid;
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), BACKLOG);
+		this.executor = newRequestExecutor();
+		this.server.setExecutor(executor);
+		this.assigner = new SpotAssigner(grid, ASSIGNMENT_WINDOW_MS, ASSIGNMENT_CANDIDATES);
+
+		int side = Math.max(grid.getRows(), grid.getColumns());
+		int zoneSize = Math.max(HISTORY_ZONE_SIZE, (side + HISTORY_ZONES_PER_SIDE - 1) / HISTORY_ZONES_PER_SIDE);
+		this.history = new OccupancyHistory(grid, zoneSize, zoneSize, HISTORY_CAPACITY, Clock.systemUTC());
+
+		this.server.createContext("/nearest", exchange -> handle(exchange, "GET", this::nearest));
+		this.server.createContext("/nearest-batch", exchange -> handle(exchange, "POST", this::nearestBatch));
+		this.server.createContext("/route", exchange -> handle(exchange, "GET", this::route));
+		this.server.createContext("/reserve", exchange -> handle(exchange, "POST", this::reserve));
+		this.server.createContext("/release", exchange -> handle(exchange, "POST", this::release));
+		this.server.createContext("/occupancy", exchange -> handle(exchange, "GET", this::occupancy));
+		this.server.createContext("/history", exchange -> handle(exchange, "GET", this::history));
+		this.server.createContext("/garage", exchange -> handle(exchange, "GET", this::garage));
+	}
+
+	/**
+	 * Sert aussi les recherches d'un garage à plusieurs étages sur /garage. Le garage reste à fermer par l'appelant.
+	 * @param garage Le garage, ou null pour ne plus le servir.
+	 */
+	public void setGarage(Garage garage) {
+		this.garage = garage;
+	}
+
+	/**
+	 * Démarre le service.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Arrête le service et attend la fin des requêtes en cours pendant au plus une seconde.
+	 */
+	public void stop() {
+		server.stop(1);
+		assigner.close();
+		history.close();
+		executor.shutdown();
+	}
+
+	/**
+	 * Retourne l'adresse d'écoute du service.
+	 * @return L'adresse et le port d'écoute.
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * Un traitement de requête qui produit le corps JSON de la réponse.
+	 */
+	private interface Endpoint {
+		/**
+		 * Traite la requête.
+		 * @param query Les paramètres de la requête.
+		 * @param body Le corps de la requête.
+		 * @return Le statut HTTP suivi du corps JSON.
+		 */
+		Response apply(Map<String, String> query, String body);
+	}
+
+	/**
+	 * Une réponse HTTP: un statut et un corps JSON.
+	 */
+	private static class Response {
+		int status;
+		String body;
+
+		Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+
+	private Response nearest(Map<String, String> query, String body) {
+		Cell start = startCell(query);
+		if (start == null) {
+			return new Response(400, "{\"error\":\"start must be a road\"}");
+		}
+
+		SearchControl control = this.searchControl(query);
+		Route route = this.findRoute(query, start, control);
+		if (route == null) {
+			return noRoute(control);
+		}
+
+		return new Response(200, "{\"spot\":" + position(route.getDestination()) + ",\"distance\":" + route.getDistance()
+				+ ",\"optimal\":" + route.isOptimal() + "}");
+	}
+
+	private Response nearestBatch(Map<String, String> query, String body) {
+		ArrayList<Cell> starts = new ArrayList<Cell>();
+		for (String line : body.split("\\R")) {
+			line = line.trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+
+			String tokens[] = line.split(",");
+			Map<String, String> start = new HashMap<String, String>();
+			start.put("row", tokens[0].trim());
+			start.put("column", tokens[1].trim());
+			starts.add(cell(start));
+		}
+
+		String time = query.get("time");
+		List<Route> routes = time != null ? grid.findRoutes(starts, Integer.parseInt(time)) : grid.findRoutes(starts);
+
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < routes.size(); i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			Route route = routes.get(i);
+			if (route == null) {
+				json.append("null");
+			} else {
+				json.append("{\"spot\":").append(position(route.getDestination())).append(",\"distance\":").append(route.getDistance()).append('}');
+			}
+		}
+		return new Response(200, json.append(']').toString());
+	}
+
+	private Response route(Map<String, String> query, String body) {
+		Cell start = startCell(query);
+		if (start == null) {
+			return new Response(400, "{\"error\":\"start must be a road\"}");
+		}
+
+		SearchControl control = this.searchControl(query);
+		Route route = this.findRoute(query, start, control);
+		if (route == null) {
+			return noRoute(control);
+		}
+
+		return new Response(200, routeJson(route));
+	}
+
+	private Response reserve(Map<String, String> query, String body) {
+		Cell start = startCell(query);
+		if (start == null) {
+			return new Response(400, "{\"error\":\"start must be a road\"}");
+		}
+
+		Route route;
+		try {
+			route = assigner.request(start).join();
+		} catch (IllegalStateException e) {
+			// Le service s'arrête
+			return new Response(503, "{\"error\":\"stopping\"}");
+		}
+		if (route == null) {
+			return new Response(404, "{\"error\":\"no free spot\"}");
+		}
+
+		return new Response(200, routeJson(route));
+	}
+
+	private Response release(Map<String, String> query, String body) {
+		Cell cell = cell(query);
+		if (!(cell instanceof Spot)) {
+			return new Response(400, "{\"error\":\"not a spot\"}");
+		}
+
+		if (!((Spot) cell).release()) {
+			return new Response(409, "{\"error\":\"spot is not reserved\"}");
+		}
+
+		return new Response(200, "{\"spot\":" + position(cell) + ",\"status\":\"FREE\"}");
+	}
+
+	private Response occupancy(Map<String, String> query, String body) {
+		if (query.containsKey("row") || query.containsKey("column")) {
+			Cell cell = cell(query);
+			if (!(cell instanceof Spot)) {
+				return new Response(400, "{\"error\":\"not a spot\"}");
+			}
+			return new Response(200, "{\"spot\":" + position(cell) + ",\"status\":\"" + ((Spot) cell).getStatus() + "\"}");
+		}
+
+		StringBuilder json = new StringBuilder("{");
+		for (Status status : Status.values()) {
+			if (json.length() > 1) {
+				json.append(',');
+			}
+			json.append('"').append(status.name().toLowerCase()).append("\":").append(grid.getSpotCount(status));
+		}
+		return new Response(200, json.append('}').toString());
+	}
+
+	private Response history(Map<String, String> query, String body) {
+		int zone = history.getZone(cell(query));
+		String hours = query.get("hours");
+		long span = Math.min(OccupancyHistory.RETAINED_INTERVALS, (hours != null ? Integer.parseInt(hours) : 24) * 4L);
+		if (span < 1) {
+			throw new IllegalArgumentException();
+		}
+
+		// La période se termine avec l'intervalle courant
+		long to = (System.currentTimeMillis() / OccupancyHistory.INTERVAL_MILLIS + 1) * OccupancyHistory.INTERVAL_MILLIS;
+		long from = to - span * OccupancyHistory.INTERVAL_MILLIS;
+		double[] rates = history.getOccupancyRates(zone, from, to);
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\"zone\":").append(zone).append(",\"spots\":").append(history.getSpotCount(zone));
+		json.append(",\"start\":").append(from).append(",\"interval\":").append(OccupancyHistory.INTERVAL_MILLIS);
+		json.append(",\"rates\":[");
+		for (int i = 0; i < rates.length; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append(Double.isNaN(rates[i]) ? "null" : String.format(Locale.ROOT, "%.4f", rates[i]));
+		}
+		return new Response(200, json.append("]}").toString());
+	}
+
+	private Response garage(Map<String, String> query, String body) {
+		Garage garage = this.garage;
+		if (garage == null) {
+			return new Response(404, "{\"error\":\"no garage\"}");
+		}
+
+		int floor = Integer.parseInt(query.get("floor"));
+		if (floor < 0 || floor >= garage.getFloorCount()) {
+			throw new IndexOutOfBoundsException();
+		}
+		Grid floorGrid = garage.getFloor(floor);
+		int row = Integer.parseInt(query.get("row"));
+		int column = Integer.parseInt(query.get("column"));
+		if (row < 0 || row >= floorGrid.getRows() || column < 0 || column >= floorGrid.getColumns()) {
+			throw new IndexOutOfBoundsException();
+		}
+		Cell start = floorGrid.getCell(row, column);
+		if (!(start instanceof Road)) {
+			return new Response(400, "{\"error\":\"start must be a road\"}");
+		}
+
+		String time = query.get("time");
+		GarageRoute route = time != null ? garage.findRoute(floor, start, Integer.parseInt(time)) : garage.findRoute(floor, start);
+		if (route == null) {
+			return new Response(404, "{\"error\":\"no free spot\"}");
+		}
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\"floor\":").append(route.getDestinationFloor());
+		json.append(",\"spot\":").append(position(route.getDestination()));
+		json.append(",\"distance\":").append(route.getDistance());
+		json.append(",\"legs\":[");
+		for (int leg = 0; leg < route.getLegs().size(); leg++) {
+			Route legRoute = route.getLegs().get(leg);
+			json.append(leg > 0 ? "," : "").append("{\"floor\":").append(route.getFloor(leg)).append(",\"path\":[");
+			for (int i = 0; i < legRoute.getLength(); i++) {
+				Cell cell = legRoute.getCell(i);
+				json.append(i > 0 ? "," : "").append('[').append(cell.getRow()).append(',').append(cell.getColumn()).append(']');
+			}
+			json.append("]}");
+		}
+		return new Response(200, json.append("]}").toString());
+	}
+
+	/**
+	 * Valide la méthode, décode les paramètres, exécute le traitement et écrit la réponse.
+	 */
+	private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+		Response response;
+		try {
+			if (!exchange.getRequestMethod().equals(method)) {
+				response = new Response(405, "{\"error\":\"method not allowed\"}");
+			} else {
+				String body = method.equals("POST") ? new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8) : "";
+				response = endpoint.apply(parseQuery(exchange.getRequestURI()), body);
+			}
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			response = new Response(400, "{\"error\":\"invalid parameters\"}");
+		} catch (RuntimeException e) {
+			// La requête reçoit toujours une réponse, même si son traitement échoue
+			System.out.println("Request " + exchange.getRequestURI() + " failed: " + e);
+			response = new Response(500, "{\"error\":\"internal error\"}");
+		}
+
+		byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(response.status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Retourne le noeud désigné par les paramètres row et column.
+	 */
+	private Cell cell(Map<String, String> query) {
+		int row = Integer.parseInt(query.get("row"));
+		int column = Integer.parseInt(query.get("column"));
+		if (row < 0 || row >= grid.getRows() || column < 0 || column >= grid.getColumns()) {
+			throw new IndexOutOfBoundsException();
+		}
+		return grid.getCell(row, column);
+	}
+
+	/**
+	 * Retourne le noeud de départ désigné par les paramètres, ou null s'il ne s'agit pas d'une route.
+	 */
+	private Cell startCell(Map<String, String> query) {
+		Cell cell = cell(query);
+		return cell instanceof Road ? cell : null;
+	}
+
+	/**
+	 * Construit le contrôle d'une recherche avec le délai demandé (paramètre budget, en millisecondes).
+	 */
+	private SearchControl searchControl(Map<String, String> query) {
+		String budget = query.get("budget");
+		return new SearchControl(budget != null ? Long.parseLong(budget) : SEARCH_BUDGET_MS);
+	}
+
+	/**
+	 * Trouve le trajet pour l'heure de départ demandée (paramètre time, en secondes depuis minuit)
+	 * ou pour l'heure courante de la grille.
+	 */
+	private Route findRoute(Map<String, String> query, Cell start, SearchControl control) {
+		String time = query.get("time");
+		return time != null ? grid.findRoute(start, Integer.parseInt(time), control) : grid.findRoute(start, control);
+	}
+
+	/**
+	 * Répond à une recherche sans trajet: le stationnement est plein, ou le délai a expiré avant qu'un espace soit atteint,
+	 * possiblement pendant l'attente des autres recherches.
+	 */
+	private static Response noRoute(SearchControl control) {
+		if (control.hasStopped()) {
+			return new Response(503, "{\"error\":\"search budget exceeded\",\"optimal\":false}");
+		}
+		return new Response(404, "{\"error\":\"no free spot\"}");
+	}
+
+	private static String position(Cell cell) {
+		return "{\"row\":" + cell.getRow() + ",\"column\":" + cell.getColumn() + "}";
+	}
+
+	private static String routeJson(Route route) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"spot\":").append(position(route.getDestination()));
+		json.append(",\"distance\":").append(route.getDistance());
+		json.append(",\"optimal\":").append(route.isOptimal());
+		json.append(",\"path\":[");
+		for (int i = 0; i < route.getLength(); i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			Cell cell = route.getCell(i);
+			json.append('[').append(cell.getRow()).append(',').append(cell.getColumn()).append(']');
+		}
+		return json.append("]}").toString();
+	}
+
+	private static Map<String, String> parseQuery(URI uri) {
+		Map<String, String> query = new HashMap<String, String>();
+		String raw = uri.getRawQuery();
+		if (raw == null) {
+			return query;
+		}
+
+		for (String pair : raw.split("&")) {
+			int separator = pair.indexOf('=');
+			if (separator > 0) {
+				query.put(pair.substring(0, separator), pair.substring(separator + 1));
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * Crée l'exécuteur des requêtes: un fil virtuel par requête si la machine virtuelle les supporte.
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+}
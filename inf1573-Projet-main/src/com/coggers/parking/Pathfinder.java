@@ -1,90 +1,371 @@
 package com.coggers.parking;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.coggers.parking.Spot.Status;
 
 /**
  * Trouve le chemin le plus court entre deux noeuds d'un graphe.
+ * Les coûts des arêtes sont des entiers bornés: les distances sont calculées en entiers (long)
+ * et les noeuds sont ordonnés par une file à compartiments plutôt que par un tas.
+ * Les métriques de la recherche sont conservées dans des tableaux indexés par noeud; un numéro
+ * de recherche permet de les invalider sans parcourir toute la grille.
+ * C'est le moteur de référence (nom "dijkstra") auquel EngineChecker compare les autres moteurs.
+ * Une instance n'est pas réentrante: un seul fil d'exécution peut l'utiliser à la fois.
  * @author Jacob Chapman
  * @author William McAllister
  * @author Jean-Francois Morel
  * @author Jean Vézina
  * @version 1.0
  */
-public class Pathfinder {
+public class Pathfinder implements SearchEngine {
+	/**
+	 * La distance d'un noeud qui n'a pas été atteint.
+	 */
+	public static final long UNREACHED = Long.MAX_VALUE;
+
+	// Nombre de noeuds visités entre deux consultations du contrôle d'une recherche
+	private static final int CONTROL_INTERVAL = 1024;
+
+	private Grid grid;
+
 	// Les noeuds qui doivent être parcourus
-	private PriorityQueue<Cell> openList;
+	private BucketQueue openList;
+
+	private long[] distanceFromStart;
+	private int[] predecessor;
+	private int[] searchStamp;
+	private int currentSearch;
 
 	/**
 	 * Construit une instance de l'algorithme de recherche de chemin.
+	 * @param grid Le graphe contenant les noeuds.
 	 */
-	public Pathfinder() {
-		// Une PriorityQueue permet à l'algorithme de simplement prendre le noeud
-		// se trouvant au haut de la liste et avoir la garantie qu'il s'agisse du
-		// noeud ayant le plus petit coût.
-		this.openList = new PriorityQueue<Cell>();
+	public Pathfinder(Grid grid) {
+		this.grid = grid;
+
+		int cellCount = grid.getRows() * grid.getColumns();
+		this.distanceFromStart = new long[cellCount];
+		this.predecessor = new int[cellCount];
+		this.searchStamp = new int[cellCount];
+
+		// Une file à compartiments permet à l'algorithme de prendre le noeud ayant
+		// le plus petit coût sans comparer les noeuds entre eux.
+		this.openList = new BucketQueue(grid.getMaxEdgeCost(), grid.getCostUnit());
+	}
+
+	@Override
+	public String getName() {
+		return SearchEngines.DIJKSTRA;
 	}
 
 	/**
-	 * Trouve le chemin le plus court entre deux noeuds d'un graphe. 
+	 * Trouve le chemin le plus court entre deux noeuds d'un graphe.
 	 * @param start Le noeud de départ.
 	 * @param end Le noeud d'arrivée
-	 * @param grid Le graphe contenant les noeuds.
+	 * @return Le chemin, du noeud de départ jusqu'au noeud d'arrivée, ou null si l'arrivée n'est pas accessible.
 	 */
-	public ArrayList<Cell> findShortestPath(Cell start, Cell end, Grid grid) {
-		start.setDistanceFromStart(0);
-		openList.add(start);
+	public Route findShortestPath(Cell start, Cell end) {
+		return this.findShortestPath(start, end, 0, false);
+	}
+
+	/**
+	 * Trouve le chemin le plus court entre deux noeuds avec les coûts d'un intervalle de la journée.
+	 * @param start Le noeud de départ.
+	 * @param end Le noeud d'arrivée
+	 * @param slot L'intervalle de la journée utilisé pour le coût de toutes les arêtes.
+	 * @return Le chemin, du noeud de départ jusqu'au noeud d'arrivée, ou null si l'arrivée n'est pas accessible.
+	 */
+	@Override
+	public Route findShortestPath(Cell start, Cell end, int slot) {
+		return this.findShortestPath(start, end, slot, true);
+	}
+
+	private Route findShortestPath(Cell start, Cell end, int slot, boolean timeDependent) {
+		this.beginSearch(start);
 
 		// Boucle tant qu'il y a des noeuds à visiter
 		while (!openList.isEmpty()) {
-			Cell current = openList.poll();
-			
+			int current = openList.poll();
+
+			// Ignore les entrées périmées d'un noeud dont la distance a été améliorée
+			if (openList.currentDistance() != distanceFromStart[current]) {
+				continue;
+			}
+
 			// Sort de la boucle si le noeud visité est la destination
-			if (current == end) {
+			if (current == end.getIndex()) {
 				break;
 			}
 
-			// Examine les arêtes du noeud présentement visité pour trouver son meilleur voisin
-			for (Edge e : current.getEdges()) {
-				// Calcule de la distance depuis le noeud de départ si on emprunte cette arête
-				double distanceFromStart = current.getDistanceFromStart() + e.getCost();
-				
-				// Lit le noeud au bout de l'arête présentement examinée
-				Cell neighbour = (Cell) e.getDestination();
-
-				// Si la distance calculée est plus petite que la valeur neighbour.getDistanceFromStart()
-				// nous avons trouvé un chemin plus court que précédemment trouvé
-				if (distanceFromStart < neighbour.getDistanceFromStart()) {
-					// Supprime le noeud de la PriorityQueue
-					openList.remove(neighbour);
-					
-					// Mets à jour les métriques du noeud voisin
-					neighbour.setDistanceFromStart(distanceFromStart);
-					neighbour.setPredecessor(current);
-					
-					// Ajoute le noeud mit à jour à la PriorityQueue où le noeud ayant
-					// le plus petit coût est au haut de la liste
-					openList.add(neighbour);
+			this.relax(current, slot, timeDependent);
+		}
+
+		if (searchStamp[end.getIndex()] != currentSearch) {
+			return null;
+		}
+		return new Route(grid, this.buildPath(end.getIndex()), distanceFromStart[end.getIndex()]);
+	}
+
+	/**
+	 * Trouve le chemin le plus court entre un noeud et l'espace de stationnement libre le plus proche.
+	 * La recherche s'arrête dès qu'un espace libre est retiré de la file: l'algorithme de Dijkstra
+	 * garantit, lorsque les coûts ne dépendent pas de l'heure, qu'aucun autre espace libre n'est plus proche.
+	 * Le coût de chaque arête est celui de l'intervalle de la journée où le véhicule atteint son origine.
+	 * Ces coûts changent par paliers d'un intervalle à l'autre et ne respectent pas la propriété FIFO:
+	 * lorsqu'un trajet traverse un changement d'intervalle, le trajet retourné n'est pas garanti optimal.
+	 * @param start Le noeud de départ.
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @return Le trajet vers l'espace libre le plus proche, ou null si aucun n'est accessible.
+	 */
+	public Route findNearestFreeSpot(Cell start, int departureSecond) {
+		return this.findNearestFreeSpot(start, departureSecond, null);
+	}
+
+	/**
+	 * Trouve le chemin le plus court entre un noeud et l'espace de stationnement libre le plus proche,
+	 * en s'arrêtant si le contrôle l'exige. Une recherche arrêtée retourne un trajet non optimal vers
+	 * l'espace libre atteint de plus faible distance provisoire.
+	 * @param start Le noeud de départ.
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @param control Le contrôle de la recherche, ou null pour une recherche complète.
+	 * @return Le trajet, ou null si aucun espace libre n'est accessible ou n'a été atteint avant l'arrêt.
+	 */
+	@Override
+	public Route findNearestFreeSpot(Cell start, int departureSecond, SearchControl control) {
+		this.beginSearch(start);
+
+		int bestSpot = -1;
+		int visited = 0;
+		while (!openList.isEmpty()) {
+			int current = openList.poll();
+			long distance = openList.currentDistance();
+			if (distance != distanceFromStart[current]) {
+				continue;
+			}
+
+			Cell cell = grid.getCell(current);
+			if (cell instanceof Spot && ((Spot) cell).getStatus() == Status.FREE) {
+				return new Route(grid, this.buildPath(current), distance);
+			}
+
+			// La consultation du contrôle lit l'horloge: elle n'est faite que périodiquement
+			if (control != null && ++visited % CONTROL_INTERVAL == 0 && control.isStopped()) {
+				return bestSpot >= 0 ? new Route(grid, this.buildPath(bestSpot), distanceFromStart[bestSpot], false) : null;
+			}
+
+			this.relax(current, TrafficProfile.slotAt(departureSecond, distance), true);
+
+			// Retient l'espace libre atteint le plus proche, qui sera retourné si la recherche est arrêtée
+			if (control != null) {
+				for (Edge e : cell.getEdges()) {
+					Cell neighbour = e.getDestination();
+					int index = neighbour.getIndex();
+					if (neighbour instanceof Spot && ((Spot) neighbour).getStatus() == Status.FREE
+							&& (bestSpot < 0 || distanceFromStart[index] < distanceFromStart[bestSpot])) {
+						bestSpot = index;
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Trouve les trajets vers les espaces libres les plus proches d'un noeud, du plus proche au plus éloigné.
+	 * La recherche continue après le premier espace libre et s'arrête au nombre demandé.
+	 * @param start Le noeud de départ.
+	 * @param count Le nombre maximal d'espaces.
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @return Les trajets, au plus count.
+	 */
+	@Override
+	public List<Route> findNearestFreeSpots(Cell start, int count, int departureSecond) {
+		this.beginSearch(start);
+
+		List<Route> routes = new ArrayList<Route>(count);
+		while (!openList.isEmpty() && routes.size() < count) {
+			int current = openList.poll();
+			long distance = openList.currentDistance();
+			if (distance != distanceFromStart[current]) {
+				continue;
+			}
+
+			Cell cell = grid.getCell(current);
+			if (cell instanceof Spot && ((Spot) cell).getStatus() == Status.FREE) {
+				routes.add(new Route(grid, this.buildPath(current), distance));
+			}
+
+			this.relax(current, TrafficProfile.slotAt(departureSecond, distance), true);
+		}
+
+		return routes;
+	}
+
+	/**
+	 * Trouve l'espace libre le plus proche d'un ensemble de noeuds de départ, chacun ayant sa propre
+	 * distance initiale. Le trajet obtenu commence au noeud de départ qui a mené à l'espace et
+	 * sa distance inclut la distance initiale de ce noeud.
+	 * @param sources Les noeuds de départ.
+	 * @param offsets La distance initiale de chaque noeud de départ, multiple de l'unité de coût de la grille.
+	 * @param slot L'intervalle de la journée utilisé pour le coût de toutes les arêtes.
+	 * @return Le trajet vers l'espace libre le plus proche, ou null si aucun n'est accessible.
+	 */
+	@Override
+	public Route findNearestFreeSpot(Cell[] sources, long[] offsets, int slot) {
+		this.beginSearch();
+		for (int i = 0; i < sources.length; i++) {
+			int source = sources[i].getIndex();
+			if (searchStamp[source] != currentSearch || offsets[i] < distanceFromStart[source]) {
+				this.visit(source, offsets[i], -1);
+				openList.add(source, offsets[i]);
+			}
+		}
+
+		while (!openList.isEmpty()) {
+			int current = openList.poll();
+			long distance = openList.currentDistance();
+			if (distance != distanceFromStart[current]) {
+				continue;
+			}
+
+			Cell cell = grid.getCell(current);
+			if (cell instanceof Spot && ((Spot) cell).getStatus() == Status.FREE) {
+				return new Route(grid, this.buildPath(current), distance);
+			}
+
+			this.relax(current, slot, true);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Calcule la distance entre un noeud et plusieurs noeuds d'arrivée.
+	 * La recherche s'arrête dès que toutes les arrivées sont atteintes.
+	 * @param start Le noeud de départ.
+	 * @param targets Les noeuds d'arrivée.
+	 * @param slot L'intervalle de la journée utilisé pour le coût de toutes les arêtes.
+	 * @return La distance de chaque arrivée, ou UNREACHED si elle n'est pas accessible.
+	 */
+	@Override
+	public long[] findDistances(Cell start, Cell[] targets, int slot) {
+		this.beginSearch(start);
+
+		int remaining = targets.length;
+		while (!openList.isEmpty() && remaining > 0) {
+			int current = openList.poll();
+			if (openList.currentDistance() != distanceFromStart[current]) {
+				continue;
+			}
+
+			// Les arrivées sont peu nombreuses: une recherche linéaire suffit
+			for (Cell target : targets) {
+				if (target.getIndex() == current) {
+					remaining--;
+					break;
 				}
 			}
+
+			this.relax(current, slot, true);
+		}
+
+		long[] distances = new long[targets.length];
+		for (int i = 0; i < targets.length; i++) {
+			distances[i] = this.getDistanceFromStart(targets[i]);
+		}
+		return distances;
+	}
+
+	/**
+	 * Retourne la distance d'un noeud calculée par la dernière recherche.
+	 * @param cell Le noeud.
+	 * @return La distance depuis le noeud de départ, ou UNREACHED si le noeud n'a pas été atteint.
+	 */
+	public long getDistanceFromStart(Cell cell) {
+		int index = cell.getIndex();
+		return searchStamp[index] == currentSearch ? distanceFromStart[index] : UNREACHED;
+	}
+
+	/**
+	 * Invalide les métriques de la recherche précédente et ajoute le noeud de départ à la file.
+	 */
+	private void beginSearch(Cell start) {
+		this.beginSearch();
+		this.visit(start.getIndex(), 0, -1);
+		openList.add(start.getIndex(), 0);
+	}
+
+	/**
+	 * Invalide les métriques de la recherche précédente et vide la file.
+	 */
+	private void beginSearch() {
+		currentSearch++;
+		if (currentSearch == 0) {
+			// Après un débordement du compteur, les anciens numéros pourraient être confondus avec le courant
+			Arrays.fill(searchStamp, 0);
+			currentSearch = 1;
+		}
+
+		openList.clear(grid.getMaxEdgeCost(), grid.getCostUnit());
+	}
+
+	/**
+	 * Examine les arêtes du noeud présentement visité pour mettre à jour ses voisins.
+	 * @param current L'indice du noeud visité.
+	 * @param slot L'intervalle de la journée utilisé pour le coût des arêtes.
+	 * @param timeDependent Vrai pour utiliser le coût de l'intervalle plutôt que le coût statique.
+	 */
+	private void relax(int current, int slot, boolean timeDependent) {
+		long currentDistance = distanceFromStart[current];
+		for (Edge e : grid.getCell(current).getEdges()) {
+			// Calcule de la distance depuis le noeud de départ si on emprunte cette arête
+			long distance = currentDistance + (timeDependent ? e.getCost(slot) : e.getCost());
+			int neighbour = e.getDestination().getIndex();
+
+			// Si la distance calculée est plus petite que la distance connue du voisin,
+			// nous avons trouvé un chemin plus court que précédemment trouvé
+			if (searchStamp[neighbour] != currentSearch || distance < distanceFromStart[neighbour]) {
+				this.visit(neighbour, distance, current);
+				openList.add(neighbour, distance);
+			}
 		}
+	}
 
-		// La recherche est terminée, on ajoute le noeud d'arrivée
-		// à la liste représentant le chemin le plus court
-		ArrayList<Cell> shortestPath = new ArrayList<Cell>();
-		Cell current = end;
-		shortestPath.add(current);
-
-		// À partir du noeud d'arrivée, navigue d'un prédécesseur à l'autre afin de
-		// bâtir le chemin calculé par l'algorithme de Dijkstra
-		while (current.getPredecessor() != null) {
-			shortestPath.add((Cell) current.getPredecessor());
-			current = (Cell) current.getPredecessor();
+	/**
+	 * Mets à jour les métriques d'un noeud pour la recherche courante.
+	 */
+	private void visit(int node, long distance, int from) {
+		searchStamp[node] = currentSearch;
+		distanceFromStart[node] = distance;
+		predecessor[node] = from;
+	}
+
+	/**
+	 * Construit le chemin se terminant au noeud d'arrivée à partir des prédécesseurs calculés.
+	 * Le tableau est alloué à chaque trajet plutôt que pris dans un tampon du moteur: un trajet est immuable
+	 * et partagé (antémémoire des trajets, véhicules, planification coopérative) bien après la recherche
+	 * suivante. Le premier passage donne la taille exacte, ce qui évite toute copie.
+	 * @param end L'indice du noeud d'arrivée.
+	 * @return Les indices des noeuds du chemin, du noeud de départ jusqu'au noeud d'arrivée.
+	 */
+	private int[] buildPath(int end) {
+		// Un premier passage sur les prédécesseurs donne la longueur exacte du chemin
+		int length = 1;
+		for (int current = end; predecessor[current] >= 0; current = predecessor[current]) {
+			length++;
 		}
-		
-		// Inverse l'ordre de la liste représentant le chemin le plus court
-		// pour faire en sorte que le noeud à l'index 0 soit le noeud de départ
-		Collections.reverse(shortestPath);
 
-		return shortestPath;
+		// Le tableau est rempli à partir de la fin pour que l'indice 0 soit le noeud de départ
+		int[] path = new int[length];
+		int current = end;
+		for (int i = length - 1; i >= 0; i--) {
+			path[i] = current;
+			current = predecessor[current];
+		}
+		return path;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,26 @@
+package com.coggers.parking;
+
+import java.awt.Point;
+
+/**
+ * Une spécialisation de la classe Road pour représenter une rampe entre deux étages d'un garage.
+ * Une rampe est reliée aux rampes situées à la même position sur les étages voisins.
+ * Dans la carte, une rampe est codée 400 plus son coefficient de trafique (401 à 500).
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class Ramp extends Road {
+	/**
+	 * Construit l'objet de type Ramp.
+	 * @param position Les coordonnées X et Y du noeud (en pixel).
+	 * @param width La largeur du noeud.
+	 * @param height La hauteur du noeud.
+	 * @param traffic Le coefficient de trafique de la rampe.
+	 */
+	public Ramp(Point position, int width, int height, int traffic) {
+	  super(position, width, height, traffic);
+	}
+}
@@ -0,0 +1,73 @@
+package com.coggers.parking;
+
+import java.awt.Color;
+import java.awt.Graphics;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Une image immuable de l'état visible de la grille: la couleur de chaque noeud, le statut
+ * de chaque espace de stationnement et la position des véhicules.
+ * Les fils de simulation ne font que signaler un changement; le minuteur d'affichage de la grille construit
+ * une nouvelle image au plus une fois par trame, et le rendu dessine la dernière image sans jamais lire
+ * les noeuds, qui continuent d'être modifiés.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+class RenderSnapshot {
+	private int columns;
+	private int cellWidth;
+	private int cellHeight;
+	private Color[] colors;
+	private Status[] statuses;
+	private int[] vehicles;
+
+	/**
+	 * Construit une image. Les tableaux ne sont pas copiés et ne doivent plus être modifiés.
+	 * @param columns Le nombre de colonnes de la grille.
+	 * @param cellWidth La largeur d'un noeud.
+	 * @param cellHeight La hauteur d'un noeud.
+	 * @param colors La couleur de chaque noeud, par indice.
+	 * @param statuses Le statut de chaque noeud, ou null s'il ne s'agit pas d'un espace de stationnement.
+	 * @param vehicles L'indice du noeud de chaque véhicule en mouvement.
+	 */
+	RenderSnapshot(int columns, int cellWidth, int cellHeight, Color[] colors, Status[] statuses, int[] vehicles) {
+		this.columns = columns;
+		this.cellWidth = cellWidth;
+		this.cellHeight = cellHeight;
+		this.colors = colors;
+		this.statuses = statuses;
+		this.vehicles = vehicles;
+	}
+
+	/**
+	 * Dessine l'image dans une composante Swing.
+	 * @param g Un objet de type Graphics.
+	 */
+	void paint(Graphics g) {
+		for (int index = 0; index < colors.length; index++) {
+			int x = (index % columns) * cellWidth;
+			int y = (index / columns) * cellHeight;
+
+			g.setColor(colors[index]);
+			g.fillRect(x, y, cellWidth, cellHeight);
+			g.setColor(Color.BLACK);
+			g.drawRect(x, y, cellWidth, cellHeight);
+
+			if (statuses[index] != null) {
+				g.setColor(Spot.labelColor(statuses[index]));
+				g.drawOval(x + 2, y + 2, cellWidth - 4, cellHeight - 4);
+				g.drawString("P", x + (cellWidth / 2) - 4, y + (cellHeight / 2) + 4);
+			}
+		}
+
+		// Les véhicules sont dessinés par-dessus les noeuds
+		g.setColor(Color.BLUE);
+		for (int index : vehicles) {
+			g.fillOval((index % columns) * cellWidth + 4, (index / columns) * cellHeight + 4, cellWidth - 8, cellHeight - 8);
+		}
+	}
+}
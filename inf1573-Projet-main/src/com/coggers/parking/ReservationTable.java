@@ -0,0 +1,188 @@
+package com.coggers.parking;
+
+import java.util.Arrays;
+
+/**
+ * Une table de réservations espace-temps: chaque paire (noeud, pas de temps) appartient au plus
+ * à un propriétaire. La table est une table de hachage à adressage ouvert et sondage linéaire
+ * sur des tableaux de primitives: une clé occupe un long (pas de temps dans les 32 bits hauts,
+ * indice du noeud dans les 32 bits bas) et son propriétaire un int, sans aucun objet par entrée.
+ * La recherche, l'ajout et le retrait se font en temps constant en moyenne; le retrait décale les
+ * entrées suivantes plutôt que de laisser des marqueurs.
+ * Les réservations antérieures au pas d'expiration sont abandonnées lors du prochain agrandissement.
+ * Une instance n'est pas synchronisée.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+class ReservationTable {
+	private static final long EMPTY = -1;
+
+	private long[] keys;
+	private int[] owners;
+	private int mask;
+	private int size;
+	private int expiredBefore;
+
+	/**
+	 * Construit une table vide.
+	 * @param capacity Le nombre de réservations prévu.
+	 */
+	ReservationTable(int capacity) {
+		int length = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+		this.keys = new long[length];
+		this.owners = new int[length];
+		this.mask = length - 1;
+		Arrays.fill(keys, EMPTY);
+	}
+
+	/**
+	 * Retourne le propriétaire d'un noeud à un pas de temps.
+	 * @param cell L'indice du noeud.
+	 * @param tick Le pas de temps.
+	 * @return Le propriétaire, ou -1 si la paire n'est pas réservée.
+	 */
+	int owner(int cell, int tick) {
+		long key = key(cell, tick);
+		for (int i = this.slot(key); ; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return owners[i];
+			}
+			if (keys[i] == EMPTY) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Réserve un noeud à un pas de temps.
+	 * @param cell L'indice du noeud.
+	 * @param tick Le pas de temps.
+	 * @param owner Le propriétaire (positif ou nul).
+	 * @return Faux si la paire est déjà réservée.
+	 */
+	boolean reserve(int cell, int tick, int owner) {
+		if ((size + 1) * 2 > keys.length) {
+			this.rehash();
+		}
+
+		long key = key(cell, tick);
+		int i = this.slot(key);
+		while (keys[i] != EMPTY) {
+			if (keys[i] == key) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		owners[i] = owner;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Retire la réservation d'un noeud à un pas de temps si elle appartient au propriétaire donné.
+	 * @param cell L'indice du noeud.
+	 * @param tick Le pas de temps.
+	 * @param owner Le propriétaire de la réservation.
+	 * @return Faux si la paire n'est pas réservée par ce propriétaire.
+	 */
+	boolean remove(int cell, int tick, int owner) {
+		long key = key(cell, tick);
+		int i = this.slot(key);
+		while (keys[i] != key) {
+			if (keys[i] == EMPTY) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		if (owners[i] != owner) {
+			return false;
+		}
+
+		// Ramène les entrées suivantes de la même grappe qui ne seraient plus trouvées à cause du trou
+		int hole = i;
+		for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+			int home = this.slot(keys[j]);
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				keys[hole] = keys[j];
+				owners[hole] = owners[j];
+				hole = j;
+			}
+		}
+		keys[hole] = EMPTY;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Vide la table.
+	 */
+	void clear() {
+		if (size > 0) {
+			Arrays.fill(keys, EMPTY);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Indique que les réservations antérieures à un pas de temps ne seront plus consultées.
+	 * @param tick Le premier pas de temps encore utile.
+	 */
+	void expireBefore(int tick) {
+		expiredBefore = Math.max(expiredBefore, tick);
+	}
+
+	/**
+	 * Retourne le nombre de réservations de la table.
+	 * @return Le nombre de réservations.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Abandonne les réservations expirées et double la capacité si la table reste plus qu'à moitié pleine.
+	 */
+	private void rehash() {
+		long[] previousKeys = keys;
+		int[] previousOwners = owners;
+
+		int live = 0;
+		for (long key : previousKeys) {
+			if (key != EMPTY && (int) (key >>> 32) >= expiredBefore) {
+				live++;
+			}
+		}
+		int length = (live + 1) * 4 > previousKeys.length ? previousKeys.length * 2 : previousKeys.length;
+
+		keys = new long[length];
+		owners = new int[length];
+		mask = length - 1;
+		size = 0;
+		Arrays.fill(keys, EMPTY);
+		for (int j = 0; j < previousKeys.length; j++) {
+			long key = previousKeys[j];
+			if (key != EMPTY && (int) (key >>> 32) >= expiredBefore) {
+				int i = this.slot(key);
+				while (keys[i] != EMPTY) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = key;
+				owners[i] = previousOwners[j];
+				size++;
+			}
+		}
+	}
+
+	private int slot(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private static long key(int cell, int tick) {
+		return ((long) tick << 32) | cell;
+	}
+}
@@ -13,6 +13,7 @@ import java.awt.Point;
  */
 public class Road extends Cell {
 	private int traffic;
+	private TrafficProfile trafficProfile;
 	/**
 	 * Construit l'objet de type Road.
 	 * Fait appel au constructeur de la classe mère et assigne la couleur blanche au noeud.
@@ -41,6 +42,45 @@ public class Road extends Cell {
 		return traffic;
 	}
 	
+	/**
+	 * Retourne le coefficient de trafique du noeud pendant un intervalle de la journée.
+	 * Sans profil, le coefficient statique de la carte est retourné.
+	 * @param slot L'intervalle de la journée (0 à 95).
+	 * @return Le coefficient de trafique.
+	 */
+	public int getTraffic(int slot) {
+		return trafficProfile != null ? trafficProfile.getTraffic(slot) : traffic;
+	}
+	
+	/**
+	 * Retourne le profil journalier de trafique du noeud.
+	 * @return trafficProfile Le profil, ou null si le trafique est statique.
+	 */
+	public TrafficProfile getTrafficProfile() {
+		return trafficProfile;
+	}
+	
+	/**
+	 * Assigne le coefficient de trafique du noeud et met à jour sa couleur.
+	 * Une mesure en direct remplace le profil journalier.
+	 * Les coûts des arêtes doivent être recalculés par la grille.
+	 * @param traffic Le coefficient de trafique.
+	 */
+	void setTraffic(int traffic) {
+		this.traffic = traffic;
+		this.trafficProfile = null;
+		this.resetColor();
+	}
+	
+	/**
+	 * Assigne le profil journalier de trafique du noeud.
+	 * Les coûts des arêtes doivent être recalculés par la grille.
+	 * @param trafficProfile Le profil, ou null pour revenir au trafique statique.
+	 */
+	void setTrafficProfile(TrafficProfile trafficProfile) {
+		this.trafficProfile = trafficProfile;
+	}
+	
 	
 	/**
 	 * Convertit la valeur du coefficient de trafique en une couleur.
@@ -0,0 +1,101 @@
+package com.coggers.parking;
+
+/**
+ * Le résultat d'une recherche: le chemin le plus court vers un espace de stationnement et sa distance.
+ * Le chemin est conservé sous forme compacte, un tableau des indices des noeuds, et se parcourt
+ * par indice ou avec un RouteCursor réutilisable.
+ * Un trajet est immuable, ce qui permet de le partager entre plusieurs demandes.
+ * Une recherche interrompue par son échéance retourne un trajet non optimal: un espace libre
+ * existe peut-être plus près.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class Route {
+	private Grid grid;
+	private int[] path;
+	private long distance;
+	private boolean optimal;
+
+	/**
+	 * Construit un trajet. Le tableau n'est pas copié et ne doit plus être modifié.
+	 * @param grid La grille contenant les noeuds.
+	 * @param path Les indices des noeuds du trajet, du noeud de départ jusqu'à l'espace de stationnement.
+	 * @param distance La distance totale du trajet.
+	 */
+	Route(Grid grid, int[] path, long distance) {
+		this(grid, path, distance, true);
+	}
+
+	/**
+	 * Construit un trajet qui peut être non optimal. Le tableau n'est pas copié et ne doit plus être modifié.
+	 * @param grid La grille contenant les noeuds.
+	 * @param path Les indices des noeuds du trajet, du noeud de départ jusqu'à l'espace de stationnement.
+	 * @param distance La distance totale du trajet.
+	 * @param optimal Vrai si aucun espace libre n'est plus proche.
+	 */
+	Route(Grid grid, int[] path, long distance, boolean optimal) {
+		this.grid = grid;
+		this.path = path;
+		this.distance = distance;
+		this.optimal = optimal;
+	}
+
+	/**
+	 * Retourne le nombre de noeuds du trajet.
+	 * @return Le nombre de noeuds, départ et arrivée inclus.
+	 */
+	public int getLength() {
+		return path.length;
+	}
+
+	/**
+	 * Retourne un noeud du trajet.
+	 * @param position La position du noeud dans le trajet (0 pour le noeud de départ).
+	 * @return Le noeud.
+	 */
+	public Cell getCell(int position) {
+		return grid.getCell(path[position]);
+	}
+
+	/**
+	 * Indique si le trajet passe par un noeud.
+	 * @param cell Le noeud.
+	 * @return Vrai si le noeud fait partie du trajet.
+	 */
+	public boolean contains(Cell cell) {
+		int index = cell.getIndex();
+		for (int node : path) {
+			if (node == index) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Retourne l'espace de stationnement au bout du trajet.
+	 * @return Le dernier noeud du trajet.
+	 */
+	public Cell getDestination() {
+		return grid.getCell(path[path.length - 1]);
+	}
+
+	/**
+	 * Retourne la distance totale du trajet.
+	 * @return distance La distance totale.
+	 */
+	public long getDistance() {
+		return distance;
+	}
+
+	/**
+	 * Indique si le trajet mène à l'espace libre le plus proche.
+	 * @return Faux si la recherche a été interrompue avant de le garantir.
+	 */
+	public boolean isOptimal() {
+		return optimal;
+	}
+}
@@ -0,0 +1,225 @@
+package com.coggers.parking;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Une antémémoire LRU des trajets calculés, indexée par noeud de départ et par intervalle de la journée:
+ * les trajets d'un même départ pour des intervalles différents sont conservés côte à côte.
+ * Le trajet conservé est celui du premier départ calculé dans l'intervalle, puis il est servi à tous les
+ * départs du même intervalle. Pathfinder attribue à chaque arête le coût de l'intervalle où le véhicule
+ * l'atteint: pour un départ plus tard dans l'intervalle, la fin du trajet peut tomber dans l'intervalle
+ * suivant et le trajet servi, comme sa distance, n'est alors exact que pour le départ calculé.
+ * Les coûts d'un profil changent par paliers d'un intervalle à l'autre, ce qui ne respecte pas la propriété
+ * FIFO (partir plus tard ne peut pas faire arriver plus tôt): la recherche dépendante du temps n'est donc pas
+ * garantie optimale lorsqu'un trajet traverse un changement d'intervalle, avec ou sans l'antémémoire.
+ * Chaque changement de statut d'un espace de stationnement ou de trafic d'une route fait avancer
+ * une époque globale. Un trajet n'est servi que s'il a été calculé à l'époque courante, ou si tous
+ * les changements survenus depuis son calcul ne peuvent pas le rendre sous-optimal (revalidation).
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+class RouteCache implements OccupancyListener {
+	// Nombre de changements conservés pour la revalidation
+	private static final int CHANGE_LOG_SIZE = 256;
+	// Au-delà de ce nombre de changements, un trajet est recalculé plutôt que revalidé
+	private static final int MAX_REVALIDATED_CHANGES = 64;
+
+	private static final byte SPOT_UNAVAILABLE = 0;
+	private static final byte SPOT_FREED = 1;
+	private static final byte TRAFFIC_INCREASED = 2;
+	private static final byte TRAFFIC_DECREASED = 3;
+	private static final byte TRAFFIC_PROFILE_REPLACED = 4;
+
+	/**
+	 * Une entrée de l'antémémoire: un trajet et l'époque à laquelle il est valide.
+	 */
+	private static class Entry {
+		Route route;
+		long epoch;
+
+		Entry(Route route, long epoch) {
+			this.route = route;
+			this.epoch = epoch;
+		}
+	}
+
+	private LinkedHashMap<Long, Entry> entries;
+	private long epoch;
+	private Cell[] changedCells;
+	private byte[] changeKinds;
+	private boolean revalidation;
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * Construit une antémémoire de trajets.
+	 * @param capacity Le nombre maximal de trajets conservés.
+	 */
+	RouteCache(int capacity) {
+		this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+		this.changedCells = new Cell[CHANGE_LOG_SIZE];
+		this.changeKinds = new byte[CHANGE_LOG_SIZE];
+		this.revalidation = true;
+	}
+
+	/**
+	 * Active ou désactive la revalidation des trajets calculés à une époque antérieure.
+	 * @param revalidation Vrai pour revalider les trajets plutôt que de les abandonner.
+	 */
+	synchronized void setRevalidation(boolean revalidation) {
+		this.revalidation = revalidation;
+	}
+
+	/**
+	 * Retourne l'époque courante.
+	 * @return epoch L'époque courante.
+	 */
+	synchronized long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Retourne le trajet conservé pour un noeud de départ et un intervalle s'il est toujours valide.
+	 * @param start Le noeud de départ.
+	 * @param slot L'intervalle de la journée du départ.
+	 * @return Le trajet, ou null s'il doit être recalculé.
+	 */
+	synchronized Route get(Cell start, int slot) {
+		Entry entry = entries.get(key(start, slot));
+		if (entry != null && (entry.epoch == epoch || (revalidation && revalidate(entry)))) {
+			entry.epoch = epoch;
+			hits++;
+			return entry.route;
+		}
+
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Conserve un trajet calculé à une époque donnée.
+	 * @param start Le noeud de départ.
+	 * @param slot L'intervalle de la journée du départ.
+	 * @param route Le trajet calculé.
+	 * @param computedAt L'époque lue avant le début du calcul.
+	 */
+	synchronized void put(Cell start, int slot, Route route, long computedAt) {
+		Entry entry = new Entry(route, computedAt);
+		if (computedAt == epoch || (revalidation && revalidate(entry))) {
+			entry.epoch = epoch;
+			entries.put(key(start, slot), entry);
+		}
+	}
+
+	/**
+	 * Retourne la clé d'un noeud de départ pour un intervalle de la journée.
+	 */
+	private static Long key(Cell start, int slot) {
+		return (long) start.getIndex() * TrafficProfile.SLOTS + slot;
+	}
+
+	/**
+	 * Vide l'antémémoire.
+	 */
+	synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Retourne le nombre de trajets servis depuis l'antémémoire.
+	 * @return hits Le nombre de succès.
+	 */
+	synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Retourne le nombre de trajets qui ont dû être recalculés.
+	 * @return misses Le nombre d'échecs.
+	 */
+	synchronized long getMisses() {
+		return misses;
+	}
+
+	@Override
+	public synchronized void statusChanged(Spot spot, Status previous, Status status) {
+		record(spot, status == Status.FREE ? SPOT_FREED : SPOT_UNAVAILABLE);
+	}
+
+	/**
+	 * Signale un changement du coefficient de trafic d'une route.
+	 * @param road La route modifiée.
+	 * @param previous L'ancien coefficient de trafic.
+	 * @param traffic Le nouveau coefficient de trafic.
+	 */
+	synchronized void trafficChanged(Road road, int previous, int traffic) {
+		if (previous != traffic) {
+			record(road, traffic > previous ? TRAFFIC_INCREASED : TRAFFIC_DECREASED);
+		}
+	}
+
+	/**
+	 * Signale le remplacement du profil journalier de trafic d'une route.
+	 * @param road La route modifiée.
+	 */
+	synchronized void trafficProfileChanged(Road road) {
+		record(road, TRAFFIC_PROFILE_REPLACED);
+	}
+
+	/**
+	 * Fait avancer l'époque et conserve le changement pour la revalidation.
+	 */
+	private void record(Cell cell, byte kind) {
+		epoch++;
+		int slot = (int) (epoch % CHANGE_LOG_SIZE);
+		changedCells[slot] = cell;
+		changeKinds[slot] = kind;
+	}
+
+	/**
+	 * Vérifie qu'aucun changement survenu depuis le calcul d'un trajet ne peut le rendre sous-optimal.
+	 * Les espaces de stationnement n'ont pas d'arêtes sortantes: un espace qui devient indisponible
+	 * ne modifie donc aucun autre trajet, et une hausse de trafic hors du trajet ne fait qu'allonger
+	 * les autres chemins. Tout autre changement force un nouveau calcul.
+	 */
+	private boolean revalidate(Entry entry) {
+		long pending = epoch - entry.epoch;
+		if (pending < 0 || pending > MAX_REVALIDATED_CHANGES) {
+			return false;
+		}
+
+		for (long e = entry.epoch + 1; e <= epoch; e++) {
+			int slot = (int) (e % CHANGE_LOG_SIZE);
+			Cell cell = changedCells[slot];
+			switch (changeKinds[slot]) {
+				case SPOT_UNAVAILABLE:
+					if (cell == entry.route.getDestination()) {
+						return false;
+					}
+					break;
+				case TRAFFIC_INCREASED:
+					if (entry.route.contains(cell)) {
+						return false;
+					}
+					break;
+				default:
+					return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,54 @@
+package com.coggers.parking;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Un curseur qui parcourt un trajet du noeud de départ jusqu'à l'espace de stationnement.
+ * Le curseur est réutilisable: un consommateur en garde un seul et le repositionne sur chaque
+ * nouveau trajet, ce qui évite toute allocation pendant le parcours.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class RouteCursor {
+	private Route route;
+	private int position;
+
+	/**
+	 * Repositionne le curseur au début d'un trajet.
+	 * @param route Le trajet à parcourir, ou null pour un parcours vide.
+	 */
+	public void reset(Route route) {
+		this.route = route;
+		this.position = 0;
+	}
+
+	/**
+	 * Indique s'il reste des noeuds à parcourir.
+	 * @return Vrai si next retourne un noeud.
+	 */
+	public boolean hasNext() {
+		return route != null && position < route.getLength();
+	}
+
+	/**
+	 * Avance d'un noeud.
+	 * @return Le noeud suivant du trajet.
+	 */
+	public Cell next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return route.getCell(position++);
+	}
+
+	/**
+	 * Retourne le nombre de noeuds déjà parcourus.
+	 * @return La position du curseur dans le trajet.
+	 */
+	public int getPosition() {
+		return position;
+	}
+}
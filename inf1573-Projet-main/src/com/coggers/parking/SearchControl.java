@@ -0,0 +1,82 @@
+package com.coggers.parking;
+
+/**
+ * Contrôle une recherche en cours: elle peut être annulée par un autre fil d'exécution et
+ * bornée par une échéance. La recherche consulte le contrôle périodiquement et s'arrête dès
+ * qu'il l'exige, en retournant le meilleur espace libre trouvé jusque-là.
+ * Le délai court à partir de la construction du contrôle, c'est-à-dire de l'arrivée de la requête:
+ * le temps passé à attendre les autres recherches est décompté, ce qui borne la latence de bout en bout.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class SearchControl {
+	private boolean bounded;
+	private long deadline;
+	private volatile boolean cancelled;
+	private volatile boolean stopped;
+
+	/**
+	 * Construit un contrôle sans échéance: la recherche ne s'arrête que si elle est annulée.
+	 */
+	public SearchControl() {
+		this.bounded = false;
+	}
+
+	/**
+	 * Construit un contrôle dont l'échéance survient après un délai.
+	 * @param budgetMillis Le délai accordé à la recherche, en millisecondes, à partir de maintenant.
+	 */
+	public SearchControl(long budgetMillis) {
+		if (budgetMillis < 0) {
+			throw new IllegalArgumentException("Délai de recherche invalide: " + budgetMillis);
+		}
+		this.bounded = true;
+		this.deadline = System.nanoTime() + budgetMillis * 1_000_000;
+	}
+
+	/**
+	 * Retourne le délai qui reste avant l'échéance.
+	 * @return Le délai restant en nanosecondes, 0 si l'échéance est passée, ou Long.MAX_VALUE sans échéance.
+	 */
+	long getRemainingNanos() {
+		return bounded ? Math.max(0, deadline - System.nanoTime()) : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Annule la recherche.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Indique si la recherche a été annulée.
+	 * @return Vrai si la recherche a été annulée.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Indique si la recherche doit s'arrêter, parce qu'elle a été annulée ou que son échéance est passée.
+	 * @return Vrai si la recherche doit s'arrêter.
+	 */
+	public boolean isStopped() {
+		if (cancelled || (bounded && System.nanoTime() - deadline >= 0)) {
+			stopped = true;
+		}
+		return stopped;
+	}
+
+	/**
+	 * Indique si une consultation a arrêté la recherche. Une recherche qui retourne null alors que
+	 * ce contrôle l'a arrêtée n'a pas pu conclure à l'absence d'espace libre.
+	 * @return Vrai si la recherche a été arrêtée avant sa fin.
+	 */
+	public boolean hasStopped() {
+		return stopped;
+	}
+}
@@ -0,0 +1,73 @@
+package com.coggers.parking;
+
+import java.util.List;
+
+/**
+ * Un moteur de recherche de plus court chemin sur une grille. La grille et les services sans interface
+ * graphique ne dépendent que de cette interface; SearchEngines choisit le moteur de chaque grille.
+ * Toutes les distances sont exactes: deux moteurs donnent les mêmes distances pour la même recherche,
+ * mais peuvent choisir des trajets ou des espaces différents à égale distance. EngineChecker
+ * compare un moteur au Pathfinder de référence.
+ * Un moteur n'est pas réentrant: la grille sérialise les recherches.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public interface SearchEngine {
+	/**
+	 * Retourne le nom du moteur, tel qu'accepté par SearchEngines.create.
+	 * @return Le nom du moteur.
+	 */
+	String getName();
+
+	/**
+	 * Trouve le chemin le plus court entre un noeud et l'espace de stationnement libre le plus proche.
+	 * Le coût de chaque arête est celui de l'intervalle de la journée où le véhicule atteint son origine.
+	 * Une recherche arrêtée par son contrôle retourne un trajet non optimal vers un espace libre atteint.
+	 * @param start Le noeud de départ.
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @param control Le contrôle de la recherche, ou null pour une recherche complète.
+	 * @return Le trajet, ou null si aucun espace libre n'est accessible ou n'a été atteint avant l'arrêt.
+	 */
+	Route findNearestFreeSpot(Cell start, int departureSecond, SearchControl control);
+
+	/**
+	 * Trouve les trajets vers les espaces libres les plus proches d'un noeud, du plus proche au plus éloigné.
+	 * @param start Le noeud de départ.
+	 * @param count Le nombre maximal d'espaces.
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @return Les trajets, au plus count.
+	 */
+	List<Route> findNearestFreeSpots(Cell start, int count, int departureSecond);
+
+	/**
+	 * Trouve l'espace libre le plus proche d'un ensemble de noeuds de départ, chacun ayant sa propre
+	 * distance initiale. Le trajet obtenu commence au noeud de départ qui a mené à l'espace et
+	 * sa distance inclut la distance initiale de ce noeud.
+	 * @param sources Les noeuds de départ.
+	 * @param offsets La distance initiale de chaque noeud de départ, multiple de l'unité de coût de la grille.
+	 * @param slot L'intervalle de la journée utilisé pour le coût de toutes les arêtes.
+	 * @return Le trajet, ou null si aucun espace libre n'est accessible.
+	 */
+	Route findNearestFreeSpot(Cell[] sources, long[] offsets, int slot);
+
+	/**
+	 * Calcule la distance entre un noeud et plusieurs noeuds d'arrivée.
+	 * @param start Le noeud de départ.
+	 * @param targets Les noeuds d'arrivée.
+	 * @param slot L'intervalle de la journée utilisé pour le coût de toutes les arêtes.
+	 * @return La distance de chaque arrivée, ou Pathfinder.UNREACHED si elle n'est pas accessible.
+	 */
+	long[] findDistances(Cell start, Cell[] targets, int slot);
+
+	/**
+	 * Trouve le chemin le plus court entre deux noeuds avec les coûts d'un intervalle de la journée.
+	 * @param start Le noeud de départ.
+	 * @param end Le noeud d'arrivée.
+	 * @param slot L'intervalle de la journée utilisé pour le coût de toutes les arêtes.
+	 * @return Le chemin, ou null si l'arrivée n'est pas accessible.
+	 */
+	Route findShortestPath(Cell start, Cell end, int slot);
+}
@@ -0,0 +1,108 @@
+package com.coggers.parking;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Construit les moteurs de recherche et choisit celui d'une grille.
+ * Le choix dépend de la taille de la grille et de la fréquence des changements de trafic:
+ * DeltaStepping n'est retenu que sur une très grande grille, avec plusieurs coeurs, et lorsque le
+ * trafic change rarement entre deux recherches, car chaque changement l'oblige à recalculer le coût
+ * de toutes les arêtes. Sinon, Pathfinder est retenu.
+ * La propriété système parking.engine (par exemple -Dparking.engine=dijkstra) impose un moteur
+ * à toutes les grilles; elle est validée à la construction de chaque grille, pour qu'un nom mal écrit
+ * arrête le programme au démarrage plutôt que de faire échouer chaque recherche.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class SearchEngines {
+	/**
+	 * La propriété système qui impose un moteur.
+	 */
+	public static final String ENGINE_PROPERTY = "parking.engine";
+
+	/**
+	 * Le nom de Pathfinder, l'algorithme de Dijkstra de référence.
+	 */
+	public static final String DIJKSTRA = "dijkstra";
+
+	/**
+	 * Le nom de DeltaStepping, la recherche parallèle.
+	 */
+	public static final String DELTA_STEPPING = "delta-stepping";
+
+	// Nombre de noeuds à partir duquel une recherche à coût fixe gagne à être répartie sur plusieurs coeurs
+	static final int PARALLEL_SEARCH_CELLS = 1_000_000;
+
+	// Au-delà, le recalcul des coûts après chaque changement de trafic coûte plus que le parallélisme ne rapporte
+	static final double MAX_CHANGES_PER_SEARCH = 0.25;
+
+	/**
+	 * Retourne le nom de tous les moteurs.
+	 * @return Les noms, le moteur de référence en premier.
+	 */
+	public static String[] getNames() {
+		return new String[] { DIJKSTRA, DELTA_STEPPING };
+	}
+
+	/**
+	 * Retourne le moteur imposé par la propriété parking.engine.
+	 * @return Le nom du moteur, ou null si la propriété est absente ou vide.
+	 * @throws IllegalArgumentException Si la propriété ne nomme aucun moteur.
+	 */
+	public static String getConfiguredName() {
+		String configured = System.getProperty(ENGINE_PROPERTY);
+		if (configured == null || configured.isEmpty()) {
+			return null;
+		}
+
+		for (String name : getNames()) {
+			if (name.equals(configured)) {
+				return name;
+			}
+		}
+		throw new IllegalArgumentException("Moteur de recherche inconnu dans -D" + ENGINE_PROPERTY + ": " + configured
+				+ " (moteurs: " + String.join(", ", getNames()) + ")");
+	}
+
+	/**
+	 * Construit un moteur de recherche pour une grille.
+	 * @param name Le nom du moteur.
+	 * @param grid La grille.
+	 * @return Le moteur.
+	 */
+	public static SearchEngine create(String name, Grid grid) {
+		switch (name) {
+			case DIJKSTRA:
+				return new Pathfinder(grid);
+			case DELTA_STEPPING:
+				// Un compartiment large du quart du coût maximal garde peu de relâchements répétés
+				int deltaUnits = Math.max(1, grid.getMaxEdgeCost() / grid.getCostUnit() / 4);
+				return new DeltaStepping(grid, ForkJoinPool.commonPool(), deltaUnits);
+			default:
+				throw new IllegalArgumentException("Moteur de recherche inconnu: " + name);
+		}
+	}
+
+	/**
+	 * Choisit le moteur d'une grille, à moins que la propriété parking.engine n'en impose un.
+	 * @param grid La grille.
+	 * @param changesPerSearch Le nombre moyen de changements de trafic entre deux recherches récentes.
+	 * @return Le nom du moteur.
+	 * @throws IllegalArgumentException Si la propriété parking.engine ne nomme aucun moteur.
+	 */
+	public static String select(Grid grid, double changesPerSearch) {
+		String configured = getConfiguredName();
+		if (configured != null) {
+			return configured;
+		}
+
+		if ((long) grid.getRows() * grid.getColumns() >= PARALLEL_SEARCH_CELLS && ForkJoinPool.getCommonPoolParallelism() > 1
+				&& changesPerSearch <= MAX_CHANGES_PER_SEARCH) {
+			return DELTA_STEPPING;
+		}
+		return DIJKSTRA;
+	}
+}
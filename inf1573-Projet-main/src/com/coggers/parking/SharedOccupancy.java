@@ -0,0 +1,348 @@
+package com.coggers.parking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Partage le statut des espaces de stationnement et le trafic des routes entre plusieurs processus
+ * d'une même machine, par un fichier projeté en mémoire. Chaque processus garde sa grille; le fichier
+ * en est la copie de référence, lue et écrite sans sérialisation ni copie.
+ * <p>
+ * Disposition du fichier (ordre d'octets natif):
+ * <ul>
+ * <li>en-tête de 64 octets: signature, rangées, colonnes, taille de l'anneau, compteur de séquence (long);</li>
+ * <li>anneau des changements: pour chaque numéro de séquence, un long qui contient les 32 bits bas du
+ * numéro et l'indice du noeud modifié;</li>
+ * <li>un entier par noeud: le statut de l'espace (ordinal + 1, 0 pour un autre noeud) dans l'octet bas et
+ * le trafic de la route dans l'octet suivant.</li>
+ * </ul>
+ * Une écriture modifie le mot du noeud par comparaison-échange, réserve un numéro de séquence en incrémentant
+ * le compteur, puis inscrit le noeud dans l'anneau. Un fil de chaque processus consulte le compteur et
+ * applique à sa grille les noeuds inscrits depuis sa dernière lecture; s'il a pris trop de retard sur
+ * l'anneau, il compare plutôt tous les noeuds. Il compare aussi tous les noeuds lorsqu'un numéro réservé reste
+ * sans inscription trop longtemps, par exemple si l'écrivain s'est arrêté entre la réservation et l'inscription:
+ * le mot du noeud étant écrit avant la réservation du numéro, le changement n'est pas perdu.
+ * <p>
+ * Le trafic partagé est le coefficient statique des routes; les profils journaliers restent propres à
+ * chaque processus.
+ * Une réservation faite par Spot.reserve n'est atomique qu'à l'intérieur d'un processus; reserve
+ * l'est pour tous les processus. Tant que l'état partagé est ouvert, Grid.reserveSpot, par lequel passent
+ * toutes les réservations de la grille (SpotAssigner, Grid.reserveNearestSpot, CooperativePlanner), utilise reserve.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class SharedOccupancy implements OccupancyListener, Closeable {
+	static final int MAGIC = 0x50534D31;
+	static final int HEADER_SIZE = 64;
+	static final int RING_SIZE = 1 << 16;
+
+	private static final int SEQUENCE_OFFSET = 16;
+	private static final long POLL_NANOS = 2_000_000;
+	// Délai après lequel un numéro réservé mais jamais inscrit est abandonné
+	private static final long PUBLISH_TIMEOUT_NANOS = 100_000_000;
+
+	private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+	private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	private Grid grid;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private int cellOffset;
+
+	private long lastSequence;
+	private long pendingSequence;
+	private long pendingSince;
+	private Thread poller;
+	private volatile boolean closed;
+
+	/**
+	 * Projette le fichier et démarre la lecture des changements des autres processus.
+	 */
+	private SharedOccupancy(Grid grid, FileChannel channel, MappedByteBuffer buffer) {
+		this.grid = grid;
+		this.channel = channel;
+		this.buffer = buffer;
+		this.buffer.order(ByteOrder.nativeOrder());
+		this.cellOffset = HEADER_SIZE + RING_SIZE * Long.BYTES;
+		this.lastSequence = (long) LONG.getAcquire(buffer, SEQUENCE_OFFSET);
+		this.pendingSequence = -1;
+
+		this.poller = new Thread(this::pollLoop, "shared-occupancy");
+		this.poller.setDaemon(true);
+	}
+
+	/**
+	 * Ouvre l'état partagé d'une grille. Si le fichier existe, la grille adopte son contenu; sinon, il est
+	 * créé à partir de la grille. La grille doit avoir été construite à partir de la même carte.
+	 * @param file Le fichier partagé.
+	 * @param grid La grille de ce processus.
+	 * @return L'état partagé, déjà synchronisé avec la grille.
+	 * @throws IOException Si le fichier ne peut pas être projeté ou ne correspond pas à la carte.
+	 */
+	public static SharedOccupancy open(Path file, Grid grid) throws IOException {
+		long size = HEADER_SIZE + (long) RING_SIZE * Long.BYTES + (long) grid.getRows() * grid.getColumns() * Integer.BYTES;
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Grille trop grande pour un fichier partagé: " + grid.getRows() + " x " + grid.getColumns());
+		}
+
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		SharedOccupancy shared;
+		try {
+			// Le verrou du fichier empêche deux processus de l'initialiser en même temps
+			FileLock lock = channel.lock();
+			try {
+				boolean created = channel.size() == 0;
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+				shared = new SharedOccupancy(grid, channel, buffer);
+				if (created) {
+					shared.initialize();
+				} else {
+					shared.validate(file);
+					shared.applyAll();
+				}
+			} finally {
+				lock.release();
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+
+		grid.addOccupancyListener(shared);
+		grid.setSharedOccupancy(shared);
+		shared.poller.start();
+		return shared;
+	}
+
+	@Override
+	public void statusChanged(Spot spot, Status previous, Status status) {
+		// Les changements appliqués par le fil de lecture viennent déjà du fichier
+		if (Thread.currentThread() != poller) {
+			this.write(spot.getIndex(), 0xFF, status.ordinal() + 1);
+		}
+	}
+
+	/**
+	 * Réserve un espace libre pour tous les processus: la réservation échoue si un autre processus
+	 * a changé le statut de l'espace dans le fichier, même avant que ce processus l'ait appris.
+	 * @param spot L'espace de stationnement.
+	 * @return Vrai si l'espace a été réservé.
+	 */
+	public boolean reserve(Spot spot) {
+		int offset = this.offset(spot.getIndex());
+		while (true) {
+			int word = (int) INT.getVolatile(buffer, offset);
+			if ((word & 0xFF) != Status.FREE.ordinal() + 1) {
+				return false;
+			}
+			int reserved = (word & ~0xFF) | (Status.RESERVED.ordinal() + 1);
+			if (INT.compareAndSet(buffer, offset, word, reserved)) {
+				this.publish(spot.getIndex());
+				break;
+			}
+		}
+
+		// L'observateur trouve le statut déjà écrit dans le fichier et ne le publie pas de nouveau
+		spot.setStatus(Status.RESERVED);
+		return true;
+	}
+
+	/**
+	 * Modifie le trafic d'une route pour tous les processus.
+	 * @param road La route.
+	 * @param traffic Le nouveau coefficient de trafic (1 à 100).
+	 */
+	public void setTraffic(Road road, int traffic) {
+		if (traffic < 1 || traffic > 100) {
+			throw new IllegalArgumentException("Coefficient de trafic invalide: " + traffic);
+		}
+		grid.setTraffic(road, traffic);
+		this.write(road.getIndex(), 0xFF00, traffic << 8);
+	}
+
+	/**
+	 * Retourne le compteur de séquence du fichier, incrémenté à chaque changement publié par un processus.
+	 * @return Le numéro de séquence.
+	 */
+	public long getSequence() {
+		return (long) LONG.getAcquire(buffer, SEQUENCE_OFFSET);
+	}
+
+	/**
+	 * Arrête la lecture des changements et ferme le fichier. Le fichier reste en place pour les autres processus.
+	 * @throws IOException Si le fichier ne peut pas être fermé.
+	 */
+	@Override
+	public void close() throws IOException {
+		grid.setSharedOccupancy(null);
+		grid.removeOccupancyListener(this);
+		closed = true;
+		LockSupport.unpark(poller);
+		try {
+			poller.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+	}
+
+	/**
+	 * Remplace une partie du mot d'un noeud et publie le changement s'il en est un.
+	 * @param index L'indice du noeud.
+	 * @param mask Les bits remplacés.
+	 * @param bits La nouvelle valeur des bits remplacés.
+	 */
+	private void write(int index, int mask, int bits) {
+		int offset = this.offset(index);
+		while (true) {
+			int word = (int) INT.getVolatile(buffer, offset);
+			int updated = (word & ~mask) | bits;
+			if (updated == word) {
+				return;
+			}
+			if (INT.compareAndSet(buffer, offset, word, updated)) {
+				this.publish(index);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Réserve un numéro de séquence et inscrit le noeud dans l'anneau.
+	 */
+	private void publish(int index) {
+		long sequence = (long) LONG.getAndAdd(buffer, SEQUENCE_OFFSET, 1L);
+		LONG.setRelease(buffer, this.ringOffset(sequence), (sequence << 32) | index);
+	}
+
+	/**
+	 * Consulte périodiquement le compteur de séquence et applique les changements des autres processus.
+	 */
+	private void pollLoop() {
+		while (!closed) {
+			long sequence = this.getSequence();
+			if (sequence != lastSequence) {
+				lastSequence = this.applyChanges(lastSequence, sequence);
+			}
+			LockSupport.parkNanos(POLL_NANOS);
+		}
+	}
+
+	/**
+	 * Applique les noeuds inscrits dans l'anneau entre deux numéros de séquence.
+	 * @return Le numéro de séquence jusqu'où les changements ont été appliqués.
+	 */
+	private long applyChanges(long from, long to) {
+		if (to - from > RING_SIZE) {
+			// Les inscriptions les plus anciennes ont été écrasées
+			this.applyAll();
+			return to;
+		}
+
+		for (long sequence = from; sequence < to; sequence++) {
+			long entry = (long) LONG.getAcquire(buffer, this.ringOffset(sequence));
+			int tag = (int) (entry >>> 32);
+			if (tag != (int) sequence) {
+				if (tag - (int) sequence > 0) {
+					// Un écrivain a déjà fait le tour de l'anneau
+					this.applyAll();
+					return to;
+				}
+				// Le numéro est réservé mais le noeud n'est pas encore inscrit: la suite au prochain passage,
+				// sauf si l'écrivain ne l'a pas inscrit à temps
+				long now = System.nanoTime();
+				if (sequence != pendingSequence) {
+					pendingSequence = sequence;
+					pendingSince = now;
+				} else if (now - pendingSince > PUBLISH_TIMEOUT_NANOS) {
+					System.out.println("Shared occupancy change " + sequence + " was never published, comparing all cells");
+					pendingSequence = -1;
+					this.applyAll();
+					return to;
+				}
+				return sequence;
+			}
+			this.apply((int) entry);
+		}
+		return to;
+	}
+
+	/**
+	 * Compare tous les noeuds au fichier et applique les différences.
+	 */
+	private void applyAll() {
+		int cellCount = grid.getRows() * grid.getColumns();
+		for (int i = 0; i < cellCount; i++) {
+			this.apply(i);
+		}
+	}
+
+	/**
+	 * Applique à la grille le mot d'un noeud lu dans le fichier.
+	 */
+	private void apply(int index) {
+		int word = (int) INT.getVolatile(buffer, this.offset(index));
+		Cell cell = grid.getCell(index);
+		if (cell instanceof Spot) {
+			int code = word & 0xFF;
+			if (code > 0 && code <= Status.values().length) {
+				((Spot) cell).setStatus(Status.values()[code - 1]);
+			}
+		} else if (cell instanceof Road) {
+			int traffic = (word >>> 8) & 0xFF;
+			if (traffic > 0 && traffic != ((Road) cell).getTraffic()) {
+				grid.setTraffic((Road) cell, traffic);
+			}
+		}
+	}
+
+	/**
+	 * Écrit l'état de la grille dans un nouveau fichier, puis la signature qui le rend valide.
+	 */
+	private void initialize() {
+		buffer.putInt(4, grid.getRows());
+		buffer.putInt(8, grid.getColumns());
+		buffer.putInt(12, RING_SIZE);
+		int cellCount = grid.getRows() * grid.getColumns();
+		for (int i = 0; i < cellCount; i++) {
+			Cell cell = grid.getCell(i);
+			int word = 0;
+			if (cell instanceof Spot) {
+				word = ((Spot) cell).getStatus().ordinal() + 1;
+			} else if (cell instanceof Road) {
+				word = ((Road) cell).getTraffic() << 8;
+			}
+			INT.setRelease(buffer, this.offset(i), word);
+		}
+		INT.setRelease(buffer, 0, MAGIC);
+	}
+
+	private void validate(Path file) throws IOException {
+		if ((int) INT.getAcquire(buffer, 0) != MAGIC || buffer.getInt(4) != grid.getRows()
+				|| buffer.getInt(8) != grid.getColumns() || buffer.getInt(12) != RING_SIZE) {
+			throw new IOException("Fichier partagé incompatible avec la carte: " + file);
+		}
+	}
+
+	private int offset(int index) {
+		return cellOffset + index * Integer.BYTES;
+	}
+
+	private int ringOffset(long sequence) {
+		return HEADER_SIZE + (int) (sequence & (RING_SIZE - 1)) * Long.BYTES;
+	}
+}
@@ -1,7 +1,6 @@
 package com.coggers.parking;
 
 import java.awt.Color;
-import java.awt.Graphics;
 import java.awt.Point;
 
 /**
@@ -31,8 +30,8 @@ public class Spot extends Cell {
 		RESERVED
 	};
 	
-	Status status;
-	private Color labelColor;
+	volatile Status status;
+	private OccupancyListener listener;
 	
 	/**
 	 * Construit l'objet de type Spot.
@@ -50,22 +49,51 @@ public class Spot extends Cell {
 	}
 	
 	/**
-	 * Assigne une couleur à l'espace de stationnement en fonction de son statut.
+	 * Assigne le statut de l'espace de stationnement et notifie l'observateur s'il a changé.
 	 * @param status Le statut de l'espace de stationnement.
 	 */
-	public void setStatus(Status status) {
+	public synchronized void setStatus(Status status) {
+		Status previous = this.status;
 		this.status = status;
-		switch (status) {
-			case FREE:
-				this.labelColor = Color.GREEN;
-				break;
-			case OCCUPIED:
-				this.labelColor = Color.RED;
-				break;
-			case RESERVED:
-				this.labelColor = Color.ORANGE;
-				break;
+		
+		if (listener != null && previous != status) {
+			listener.statusChanged(this, previous, status);
+		}
+	}
+	
+	/**
+	 * Réserve l'espace de stationnement s'il est libre.
+	 * La vérification et le changement de statut sont atomiques.
+	 * @return Vrai si l'espace a été réservé, faux s'il n'était pas libre.
+	 */
+	public synchronized boolean reserve() {
+		if (status != Status.FREE) {
+			return false;
+		}
+		
+		this.setStatus(Status.RESERVED);
+		return true;
+	}
+	
+	/**
+	 * Libère l'espace de stationnement s'il est réservé.
+	 * @return Vrai si la réservation a été annulée, faux si l'espace n'était pas réservé.
+	 */
+	public synchronized boolean release() {
+		if (status != Status.RESERVED) {
+			return false;
 		}
+		
+		this.setStatus(Status.FREE);
+		return true;
+	}
+	
+	/**
+	 * Assigne l'observateur notifié à chaque changement de statut.
+	 * @param listener L'observateur des changements de statut.
+	 */
+	void setOccupancyListener(OccupancyListener listener) {
+		this.listener = listener;
 	}
 	
 	/**
@@ -77,14 +105,18 @@ public class Spot extends Cell {
 	}
 	
 	/**
-	 * Dessine un noeud dans une composante Swing.
-	 * @param g Un objet de type Graphics.
+	 * Retourne la couleur de l'étiquette d'un espace de stationnement en fonction de son statut.
+	 * @param status Le statut de l'espace de stationnement.
+	 * @return La couleur de l'étiquette.
 	 */
-	public void draw(Graphics g) {
-		super.draw(g);
-		
-		g.setColor(this.labelColor);
-		g.drawOval(getPosition().x + 2, getPosition().y + 2, getWidth() - 4, getHeight() - 4);
-		g.drawString("P", getPosition().x + (getWidth() / 2) - 4, getPosition().y + (getHeight() / 2) + 4);
+	static Color labelColor(Status status) {
+		switch (status) {
+			case FREE:
+				return Color.GREEN;
+			case OCCUPIED:
+				return Color.RED;
+			default:
+				return Color.ORANGE;
+		}
 	}
 }
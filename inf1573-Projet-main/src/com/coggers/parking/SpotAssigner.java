@@ -0,0 +1,299 @@
+package com.coggers.parking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Attribue les espaces libres aux conducteurs par lots plutôt qu'un conducteur à la fois.
+ * Les demandes reçues pendant une fenêtre de temps sont regroupées; à la fin de la fenêtre,
+ * chaque conducteur obtient la liste de ses espaces libres les plus proches et une affectation
+ * de coût total minimal est calculée, puis tous les espaces retenus sont réservés d'un coup.
+ * Deux conducteurs d'un même lot ne visent donc jamais le même espace.
+ * <p>
+ * L'affectation est un couplage de coût minimal dans le graphe biparti conducteurs-espaces, calculé
+ * par chemins augmentants les plus courts (algorithme de Dijkstra avec potentiels). Le graphe ne
+ * contient que les candidats de chaque conducteur: le travail d'un lot est borné par le nombre
+ * de conducteurs multiplié par le nombre de candidats. Un conducteur resté sans espace, ou dont
+ * l'espace a été pris hors du lot, est servi par une recherche ordinaire.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class SpotAssigner {
+	private static final long UNREACHED = Long.MAX_VALUE;
+
+	private Grid grid;
+	private int candidates;
+	private ScheduledExecutorService scheduler;
+
+	private Object pendingLock;
+	private List<Cell> pendingStarts;
+	private List<CompletableFuture<Route>> pendingResults;
+	private boolean closed;
+
+	private AtomicLong assigned;
+	private AtomicLong fallbacks;
+
+	/**
+	 * Construit l'attributeur et démarre sa fenêtre de regroupement.
+	 * @param grid La grille.
+	 * @param windowMillis La durée d'une fenêtre de regroupement en millisecondes.
+	 * @param candidates Le nombre d'espaces les plus proches considérés pour chaque conducteur.
+	 */
+	public SpotAssigner(Grid grid, long windowMillis, int candidates) {
+		this.grid = grid;
+		this.candidates = Math.max(1, candidates);
+		this.pendingLock = new Object();
+		this.pendingStarts = new ArrayList<Cell>();
+		this.pendingResults = new ArrayList<CompletableFuture<Route>>();
+		this.assigned = new AtomicLong();
+		this.fallbacks = new AtomicLong();
+
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "spot-assigner");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.scheduler.scheduleWithFixedDelay(this::assignPending, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Ajoute une demande au lot courant.
+	 * @param start Le noeud de départ du conducteur.
+	 * @return Le trajet vers l'espace réservé pour le conducteur, ou null si aucun espace n'est accessible,
+	 * disponible à la fin de la fenêtre.
+	 * @throws IllegalStateException Si l'attributeur est fermé: aucune fenêtre ne traiterait plus la demande.
+	 */
+	public CompletableFuture<Route> request(Cell start) {
+		CompletableFuture<Route> result = new CompletableFuture<Route>();
+		synchronized (pendingLock) {
+			if (closed) {
+				throw new IllegalStateException("L'attributeur d'espaces est fermé");
+			}
+			pendingStarts.add(start);
+			pendingResults.add(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Retourne le nombre de conducteurs servis par l'affectation d'un lot.
+	 * @return Le nombre de conducteurs.
+	 */
+	public long getAssigned() {
+		return assigned.get();
+	}
+
+	/**
+	 * Retourne le nombre de conducteurs servis par une recherche ordinaire, faute d'espace dans leur affectation.
+	 * @return Le nombre de conducteurs.
+	 */
+	public long getFallbacks() {
+		return fallbacks.get();
+	}
+
+	/**
+	 * Traite les demandes en attente et arrête la fenêtre de regroupement. Les demandes suivantes sont refusées.
+	 */
+	public void close() {
+		synchronized (pendingLock) {
+			closed = true;
+		}
+		scheduler.shutdown();
+		try {
+			scheduler.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.assignPending();
+	}
+
+	/**
+	 * Retire le lot courant et lui attribue des espaces.
+	 */
+	private void assignPending() {
+		List<Cell> starts;
+		List<CompletableFuture<Route>> results;
+		synchronized (pendingLock) {
+			if (pendingStarts.isEmpty()) {
+				return;
+			}
+			starts = pendingStarts;
+			results = pendingResults;
+			pendingStarts = new ArrayList<Cell>();
+			pendingResults = new ArrayList<CompletableFuture<Route>>();
+		}
+
+		try {
+			List<Route> routes = this.assign(starts);
+			for (int i = 0; i < results.size(); i++) {
+				results.get(i).complete(routes.get(i));
+			}
+		} catch (RuntimeException e) {
+			for (CompletableFuture<Route> result : results) {
+				result.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Calcule l'affectation d'un lot et réserve les espaces retenus.
+	 * @param starts Les noeuds de départ des conducteurs.
+	 * @return Le trajet réservé de chaque conducteur, ou null si aucun espace n'est accessible.
+	 */
+	List<Route> assign(List<Cell> starts) {
+		int drivers = starts.size();
+
+		// Candidats de chaque conducteur; les espaces reçoivent un numéro local au lot
+		Map<Cell, Integer> spotNumbers = new HashMap<Cell, Integer>();
+		List<List<Route>> options = new ArrayList<List<Route>>(drivers);
+		int[][] optionSpots = new int[drivers][];
+		for (int d = 0; d < drivers; d++) {
+			List<Route> routes = starts.get(d) instanceof Road ? grid.findNearestFreeSpots(starts.get(d), candidates) : new ArrayList<Route>();
+			options.add(routes);
+			optionSpots[d] = new int[routes.size()];
+			for (int k = 0; k < routes.size(); k++) {
+				Integer number = spotNumbers.get(routes.get(k).getDestination());
+				if (number == null) {
+					number = spotNumbers.size();
+					spotNumbers.put(routes.get(k).getDestination(), number);
+				}
+				optionSpots[d][k] = number;
+			}
+		}
+
+		int[] matchedOption = this.match(options, optionSpots, spotNumbers.size());
+
+		// Réserve d'abord tous les espaces retenus, pour qu'une recherche ordinaire ne les prenne pas
+		Route[] result = new Route[drivers];
+		for (int d = 0; d < drivers; d++) {
+			Route route = matchedOption[d] >= 0 ? options.get(d).get(matchedOption[d]) : null;
+			if (route != null && grid.reserveSpot((Spot) route.getDestination())) {
+				result[d] = route;
+				assigned.incrementAndGet();
+			}
+		}
+
+		// Les conducteurs sans espace font une recherche ordinaire
+		for (int d = 0; d < drivers; d++) {
+			if (result[d] == null && starts.get(d) instanceof Road) {
+				result[d] = grid.reserveNearestSpot(starts.get(d));
+				fallbacks.incrementAndGet();
+			}
+		}
+		return Arrays.asList(result);
+	}
+
+	/**
+	 * Calcule un couplage de cardinalité maximale et de coût minimal entre les conducteurs et les espaces.
+	 * Chaque itération cherche, dans le graphe résiduel, le chemin augmentant le plus court d'un conducteur
+	 * libre vers un espace libre. Les potentiels rendent les coûts réduits positifs pour l'algorithme de Dijkstra.
+	 * @param options Les trajets candidats de chaque conducteur, dont la distance est le coût.
+	 * @param optionSpots Le numéro de l'espace de chaque candidat.
+	 * @param spots Le nombre d'espaces distincts.
+	 * @return La position du candidat retenu pour chaque conducteur, ou -1.
+	 */
+	private int[] match(List<List<Route>> options, int[][] optionSpots, int spots) {
+		int drivers = optionSpots.length;
+		int[] matchedOption = new int[drivers];
+		int[] spotDriver = new int[spots];
+		Arrays.fill(matchedOption, -1);
+		Arrays.fill(spotDriver, -1);
+
+		// Noeuds: les conducteurs puis les espaces
+		int nodes = drivers + spots;
+		long[] potential = new long[nodes];
+		long[] distance = new long[nodes];
+		int[] previousDriver = new int[spots];
+		int[] previousOption = new int[spots];
+		boolean[] settled = new boolean[nodes];
+		PriorityQueue<long[]> queue = new PriorityQueue<long[]>((a, b) -> Long.compare(a[0], b[0]));
+
+		while (true) {
+			Arrays.fill(distance, UNREACHED);
+			Arrays.fill(settled, false);
+			queue.clear();
+			for (int d = 0; d < drivers; d++) {
+				if (matchedOption[d] < 0) {
+					distance[d] = 0;
+					queue.add(new long[] { 0, d });
+				}
+			}
+
+			// Dijkstra sur les coûts réduits; l'espace libre atteint au coût réel minimal termine le chemin
+			int target = -1;
+			long targetCost = UNREACHED;
+			while (!queue.isEmpty()) {
+				long[] entry = queue.poll();
+				int node = (int) entry[1];
+				if (settled[node]) {
+					continue;
+				}
+				settled[node] = true;
+
+				if (node < drivers) {
+					for (int k = 0; k < optionSpots[node].length; k++) {
+						int spot = drivers + optionSpots[node][k];
+						if (k == matchedOption[node]) {
+							continue;
+						}
+						long reduced = distance[node] + options.get(node).get(k).getDistance() + potential[node] - potential[spot];
+						if (reduced < distance[spot]) {
+							distance[spot] = reduced;
+							previousDriver[spot - drivers] = node;
+							previousOption[spot - drivers] = k;
+							queue.add(new long[] { reduced, spot });
+						}
+					}
+				} else {
+					int driver = spotDriver[node - drivers];
+					if (driver < 0) {
+						long cost = distance[node] + potential[node];
+						if (cost < targetCost) {
+							target = node;
+							targetCost = cost;
+						}
+					} else {
+						// Arête inverse vers le conducteur qui occupe l'espace
+						long reduced = distance[node] - options.get(driver).get(matchedOption[driver]).getDistance() + potential[node] - potential[driver];
+						if (reduced < distance[driver]) {
+							distance[driver] = reduced;
+							queue.add(new long[] { reduced, driver });
+						}
+					}
+				}
+			}
+
+			if (target < 0) {
+				return matchedOption;
+			}
+
+			for (int v = 0; v < nodes; v++) {
+				if (distance[v] != UNREACHED) {
+					potential[v] += distance[v];
+				}
+			}
+
+			// Inverse les arêtes du chemin augmentant
+			int spot = target - drivers;
+			while (spot >= 0) {
+				int driver = previousDriver[spot];
+				int previousSpot = matchedOption[driver] >= 0 ? optionSpots[driver][matchedOption[driver]] : -1;
+				matchedOption[driver] = previousOption[spot];
+				spotDriver[spot] = driver;
+				spot = previousSpot;
+			}
+		}
+	}
+}
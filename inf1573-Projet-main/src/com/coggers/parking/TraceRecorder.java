@@ -0,0 +1,117 @@
+package com.coggers.parking;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Enregistre une trace des recherches et des changements d'occupation d'une grille.
+ * La trace commence par les dimensions de la grille et le statut de chaque espace de stationnement,
+ * ce qui la rend rejouable sur une grille construite à partir de la même carte. Format binaire, un événement par enregistrement:
+ * <ul>
+ * <li>STATUS: type, instant (ns), indice du noeud, statut;</li>
+ * <li>QUERY: type, instant (ns), indice du départ, heure de départ (s), indice de l'espace choisi (-1 si aucun),
+ * distance, latence (ns).</li>
+ * </ul>
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class TraceRecorder implements OccupancyListener, Closeable {
+	static final int MAGIC = 0x50545231;
+	static final byte STATUS = 1;
+	static final byte QUERY = 2;
+
+	private Grid grid;
+	private DataOutputStream out;
+	private long origin;
+
+	/**
+	 * Commence l'enregistrement d'une trace pour une grille.
+	 * @param file Le fichier de la trace.
+	 * @param grid La grille observée.
+	 * @throws IOException Si le fichier ne peut pas être créé.
+	 */
+	public TraceRecorder(Path file, Grid grid) throws IOException {
+		this.grid = grid;
+		this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+		this.origin = System.nanoTime();
+
+		synchronized (this) {
+			out.writeInt(MAGIC);
+			out.writeInt(grid.getRows());
+			out.writeInt(grid.getColumns());
+			out.writeInt(grid.getCell(0, 0).getWidth());
+			out.writeInt(grid.getCell(0, 0).getHeight());
+
+			// L'état initial est enregistré comme une suite de changements à l'instant 0
+			for (int i = 0; i < grid.getRows(); i++) {
+				for (int j = 0; j < grid.getColumns(); j++) {
+					Cell cell = grid.getCell(i, j);
+					if (cell instanceof Spot) {
+						this.writeStatus(0, cell.getIndex(), ((Spot) cell).getStatus());
+					}
+				}
+			}
+		}
+
+		grid.addOccupancyListener(this);
+		grid.setTraceRecorder(this);
+	}
+
+	@Override
+	public synchronized void statusChanged(Spot spot, Status previous, Status status) {
+		try {
+			this.writeStatus(System.nanoTime() - origin, spot.getIndex(), status);
+		} catch (IOException e) {
+			System.out.println("Trace could not be written: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Enregistre une recherche.
+	 * @param start Le noeud de départ.
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @param route Le trajet obtenu, ou null.
+	 * @param latency La durée de la recherche en nanosecondes.
+	 */
+	synchronized void recordQuery(Cell start, int departureSecond, Route route, long latency) {
+		try {
+			out.writeByte(QUERY);
+			out.writeLong(System.nanoTime() - origin);
+			out.writeInt(start.getIndex());
+			out.writeInt(departureSecond);
+			out.writeInt(route != null ? route.getDestination().getIndex() : -1);
+			out.writeLong(route != null ? route.getDistance() : -1);
+			out.writeLong(latency);
+		} catch (IOException e) {
+			System.out.println("Trace could not be written: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Arrête l'enregistrement et ferme le fichier.
+	 */
+	@Override
+	public void close() throws IOException {
+		grid.removeOccupancyListener(this);
+		grid.setTraceRecorder(null);
+		synchronized (this) {
+			out.close();
+		}
+	}
+
+	private void writeStatus(long time, int cellIndex, Status status) throws IOException {
+		out.writeByte(STATUS);
+		out.writeLong(time);
+		out.writeInt(cellIndex);
+		out.writeByte(status.ordinal());
+	}
+}
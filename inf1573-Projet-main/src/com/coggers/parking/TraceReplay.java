@@ -0,0 +1,294 @@
+package com.coggers.parking;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.coggers.parking.Spot.Status;
+
+/**
+ * Rejoue une trace enregistrée par TraceRecorder sur une grille sans interface graphique.
+ * Les changements d'occupation sont appliqués dans l'ordre et les recherches sont relancées
+ * à la vitesse d'origine, N fois plus vite ou aussi vite que possible.
+ * Le rapport donne les centiles de latence, le débit et le taux de résultats différents de la trace
+ * et d'une recherche de référence faite par un Pathfinder sans antémémoire.
+ * Seules les recherches de la grille sont mesurées. La référence est calculée après le rejeu, par un
+ * second passage séquentiel sur une nouvelle grille, dans l'état d'occupation de chaque recherche
+ * dans la trace. Avec plusieurs fils, une recherche rejouée peut voir des changements d'occupation
+ * voisins dans un autre ordre que celui de la trace; ses différences avec la référence en viennent.
+ * <p>
+ * Utilisation: TraceReplay carte.txt trace.bin [vitesse|max] [fils] [circulation.txt]
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class TraceReplay {
+	private int[][] map;
+	private byte[] traffic;
+	private int cellWidth;
+	private int cellHeight;
+	private Grid grid;
+
+	private int eventCount;
+	private byte[] types;
+	private long[] times;
+	private int[] cells;
+	private int[] values;
+	private long[] distances;
+	private long[] recordedLatencies;
+
+	/**
+	 * Lit une trace et construit la grille sur laquelle elle sera rejouée.
+	 * @param map La représentation tabulaire de la carte utilisée lors de l'enregistrement.
+	 * @param traffic Les profils de circulation utilisés lors de l'enregistrement, ou null.
+	 * @param trace Le contenu de la trace.
+	 * @throws IOException Si la trace est illisible ou ne correspond pas à la carte.
+	 */
+	public TraceReplay(int[][] map, InputStream traffic, InputStream trace) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(trace, 1 << 16));
+		if (in.readInt() != TraceRecorder.MAGIC) {
+			throw new IOException("Ce fichier n'est pas une trace");
+		}
+
+		int rows = in.readInt();
+		int columns = in.readInt();
+		this.cellWidth = in.readInt();
+		this.cellHeight = in.readInt();
+		if (rows != map.length || columns != map[0].length) {
+			throw new IOException("Trace incompatible avec la carte");
+		}
+
+		// Les profils sont conservés pour construire la grille du passage de référence
+		this.map = map;
+		this.traffic = traffic != null ? traffic.readAllBytes() : null;
+		this.grid = this.newGrid();
+		this.read(in);
+	}
+
+	/**
+	 * Construit une grille dans l'état d'occupation du début de la trace.
+	 * Les noeuds ont la taille d'origine pour que les distances soient comparables.
+	 */
+	private Grid newGrid() {
+		Grid grid = new Grid(map[0].length * cellWidth, map.length * cellHeight, map);
+		if (traffic != null) {
+			MapLoader.readTrafficProfiles(new ByteArrayInputStream(traffic), grid);
+		}
+		return grid;
+	}
+
+	/**
+	 * Charge tous les événements en mémoire pour que la lecture n'influence pas les mesures.
+	 */
+	private void read(DataInputStream in) throws IOException {
+		int capacity = 1024;
+		types = new byte[capacity];
+		times = new long[capacity];
+		cells = new int[capacity];
+		values = new int[capacity];
+		distances = new long[capacity];
+		recordedLatencies = new long[capacity];
+
+		while (true) {
+			byte type;
+			try {
+				type = in.readByte();
+			} catch (EOFException e) {
+				break;
+			}
+
+			if (eventCount == types.length) {
+				capacity *= 2;
+				types = Arrays.copyOf(types, capacity);
+				times = Arrays.copyOf(times, capacity);
+				cells = Arrays.copyOf(cells, capacity);
+				values = Arrays.copyOf(values, capacity);
+				distances = Arrays.copyOf(distances, capacity);
+				recordedLatencies = Arrays.copyOf(recordedLatencies, capacity);
+			}
+
+			try {
+				types[eventCount] = type;
+				times[eventCount] = in.readLong();
+				cells[eventCount] = in.readInt();
+				if (type == TraceRecorder.STATUS) {
+					values[eventCount] = in.readByte();
+				} else if (type == TraceRecorder.QUERY) {
+					values[eventCount] = in.readInt();
+					// L'espace choisi n'est pas comparé: des espaces à égale distance sont équivalents
+					in.readInt();
+					distances[eventCount] = in.readLong();
+					recordedLatencies[eventCount] = in.readLong();
+				} else {
+					throw new IOException("Événement inconnu: " + type);
+				}
+			} catch (EOFException e) {
+				// Un événement incomplet en fin de trace provient d'un enregistrement interrompu
+				break;
+			}
+			eventCount++;
+		}
+	}
+
+	/**
+	 * Rejoue la trace et affiche le rapport.
+	 * @param speed Le facteur d'accélération (1 pour la vitesse d'origine, 0 pour la vitesse maximale).
+	 * @param threads Le nombre de fils qui exécutent les recherches.
+	 * @throws InterruptedException Si le rejeu est interrompu.
+	 */
+	public void replay(double speed, int threads) throws InterruptedException {
+		Status[] statuses = Status.values();
+		int queryCount = 0;
+		for (int i = 0; i < eventCount; i++) {
+			if (types[i] == TraceRecorder.QUERY) {
+				queryCount++;
+			}
+		}
+
+		long[] latencies = new long[queryCount];
+		long[] replayed = new long[queryCount];
+		AtomicInteger completed = new AtomicInteger();
+		ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+
+		long begin = System.nanoTime();
+		int query = 0;
+		for (int i = 0; i < eventCount; i++) {
+			if (speed > 0) {
+				long due = begin + (long) (times[i] / speed);
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				}
+			}
+
+			if (types[i] == TraceRecorder.STATUS) {
+				((Spot) grid.getCell(cells[i])).setStatus(statuses[values[i]]);
+				continue;
+			}
+
+			int event = i;
+			int slot = query++;
+			Runnable task = () -> {
+				Cell start = grid.getCell(cells[event]);
+				long queryBegin = System.nanoTime();
+				Route route = grid.findRoute(start, values[event]);
+				latencies[slot] = System.nanoTime() - queryBegin;
+				replayed[slot] = route != null ? route.getDistance() : -1;
+				completed.incrementAndGet();
+			};
+
+			if (executor != null) {
+				executor.execute(task);
+			} else {
+				task.run();
+			}
+		}
+
+		if (executor != null) {
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.HOURS);
+		}
+		long elapsed = System.nanoTime() - begin;
+
+		long traceMismatches = 0;
+		for (int i = 0, q = 0; i < eventCount; i++) {
+			if (types[i] == TraceRecorder.QUERY && replayed[q++] != distances[i]) {
+				traceMismatches++;
+			}
+		}
+		long referenceMismatches = this.countReferenceMismatches(replayed);
+
+		long[] recorded = new long[queryCount];
+		for (int i = 0, q = 0; i < eventCount; i++) {
+			if (types[i] == TraceRecorder.QUERY) {
+				recorded[q++] = recordedLatencies[i];
+			}
+		}
+
+		Arrays.sort(latencies);
+		Arrays.sort(recorded);
+		System.out.printf("Événements: %d (%d recherches)%n", eventCount, queryCount);
+		System.out.printf("Durée: %.3f s, débit: %.1f recherches/s%n", elapsed / 1e9, completed.get() / (elapsed / 1e9));
+		System.out.printf("Latence rejouée  p50/p99/p999: %s / %s / %s%n", micros(latencies, 0.5), micros(latencies, 0.99), micros(latencies, 0.999));
+		System.out.printf("Latence d'origine p50/p99/p999: %s / %s / %s%n", micros(recorded, 0.5), micros(recorded, 0.99), micros(recorded, 0.999));
+		System.out.printf("Résultats différents de la trace: %d (%.3f %%)%n", traceMismatches, percent(traceMismatches, queryCount));
+		System.out.printf("Résultats différents de la référence: %d (%.3f %%)%n", referenceMismatches, percent(referenceMismatches, queryCount));
+	}
+
+	/**
+	 * Rejoue la trace une seconde fois, séquentiellement et sans mesure, sur une nouvelle grille, et compare
+	 * chaque recherche rejouée à celle d'un Pathfinder dans l'état d'occupation de la trace.
+	 * @param replayed La distance obtenue par chaque recherche rejouée, ou -1.
+	 * @return Le nombre de recherches différentes de la référence.
+	 */
+	private long countReferenceMismatches(long[] replayed) {
+		Status[] statuses = Status.values();
+		Grid referenceGrid = this.newGrid();
+		Pathfinder reference = new Pathfinder(referenceGrid);
+
+		long mismatches = 0;
+		for (int i = 0, q = 0; i < eventCount; i++) {
+			if (types[i] == TraceRecorder.STATUS) {
+				((Spot) referenceGrid.getCell(cells[i])).setStatus(statuses[values[i]]);
+				continue;
+			}
+
+			Route expected = reference.findNearestFreeSpot(referenceGrid.getCell(cells[i]), values[i]);
+			if (replayed[q++] != (expected != null ? expected.getDistance() : -1)) {
+				mismatches++;
+			}
+		}
+		return mismatches;
+	}
+
+	private static String micros(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return "-";
+		}
+		int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+		return String.format("%.1f µs", sorted[Math.max(0, index)] / 1e3);
+	}
+
+	private static double percent(long count, int total) {
+		return total == 0 ? 0 : 100.0 * count / total;
+	}
+
+	/**
+	 * Point d'entrée du rejeu.
+	 * @param args La carte, la trace, la vitesse (facteur ou max), le nombre de fils et les profils de circulation.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.out.println("Usage: TraceReplay <map.txt> <trace.bin> [speed|max] [threads] [traffic.txt]");
+			return;
+		}
+
+		System.setProperty("java.awt.headless", "true");
+		int map[][];
+		try (InputStream mapInput = Files.newInputStream(Paths.get(args[0]))) {
+			map = MapLoader.readMap(mapInput);
+		}
+
+		double speed = args.length > 2 ? (args[2].equals("max") ? 0 : Double.parseDouble(args[2])) : 1;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+		TraceReplay replay;
+		try (InputStream traceInput = Files.newInputStream(Paths.get(args[1]));
+				InputStream trafficInput = args.length > 4 ? Files.newInputStream(Paths.get(args[4])) : null) {
+			replay = new TraceReplay(map, trafficInput, traceInput);
+		}
+		replay.replay(speed, threads);
+	}
+}
@@ -0,0 +1,77 @@
+package com.coggers.parking;
+
+/**
+ * Le profil journalier du coefficient de trafic d'une route, découpé en intervalles de 15 minutes.
+ * Chaque intervalle est conservé sur un octet (0 à 100), soit 96 octets par route.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+public class TrafficProfile {
+	/**
+	 * Le nombre d'intervalles dans une journée.
+	 */
+	public static final int SLOTS = 96;
+	/**
+	 * La durée d'un intervalle en secondes.
+	 */
+	public static final int SLOT_SECONDS = 15 * 60;
+	/**
+	 * Le nombre d'unités de coût d'une arête parcourues en une seconde.
+	 * Permet de convertir la distance d'un noeud en heure d'arrivée.
+	 */
+	public static final int COST_UNITS_PER_SECOND = 100;
+
+	private byte[] traffic;
+
+	/**
+	 * Construit un profil à partir de valeurs réparties uniformément sur la journée.
+	 * Le nombre de valeurs doit diviser 96: par exemple 24 valeurs horaires ou 96 valeurs aux 15 minutes.
+	 * @param values Les coefficients de trafic (1 à 100) dans l'ordre chronologique.
+	 */
+	public TrafficProfile(int[] values) {
+		if (values.length == 0 || SLOTS % values.length != 0) {
+			throw new IllegalArgumentException("Un profil doit contenir un nombre de valeurs qui divise " + SLOTS);
+		}
+
+		this.traffic = new byte[SLOTS];
+		int span = SLOTS / values.length;
+		for (int slot = 0; slot < SLOTS; slot++) {
+			int value = values[slot / span];
+			if (value < 1 || value > 100) {
+				throw new IllegalArgumentException("Coefficient de trafic invalide: " + value);
+			}
+			this.traffic[slot] = (byte) value;
+		}
+	}
+
+	/**
+	 * Retourne le coefficient de trafic pendant un intervalle.
+	 * @param slot L'intervalle (0 à 95).
+	 * @return Le coefficient de trafic.
+	 */
+	public int getTraffic(int slot) {
+		return traffic[slot];
+	}
+
+	/**
+	 * Retourne l'intervalle de la journée correspondant à une heure.
+	 * @param secondOfDay Le nombre de secondes depuis minuit (peut dépasser une journée).
+	 * @return L'intervalle (0 à 95).
+	 */
+	public static int slotAt(long secondOfDay) {
+		return (int) ((secondOfDay / SLOT_SECONDS) % SLOTS);
+	}
+
+	/**
+	 * Retourne l'intervalle dans lequel un véhicule parti à une heure donnée atteint un noeud.
+	 * @param departureSecond L'heure de départ en secondes depuis minuit.
+	 * @param distance La distance parcourue depuis le départ, en unités de coût.
+	 * @return L'intervalle (0 à 95).
+	 */
+	public static int slotAt(long departureSecond, long distance) {
+		return slotAt(departureSecond + distance / COST_UNITS_PER_SECOND);
+	}
+}
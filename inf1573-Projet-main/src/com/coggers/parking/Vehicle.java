@@ -0,0 +1,144 @@
+package com.coggers.parking;
+
+/**
+ * Un véhicule simulé qui parcourt un trajet vers son espace de stationnement.
+ * Seul le fil de simulation de la grille le fait avancer; sa position et son état sont publiés
+ * par des champs volatils pour le rendu et pour l'arrêt demandé par l'interface.
+ * Un véhicule planifié de façon coopérative avance au rythme des pas de son planificateur.
+ * L'arrêt annule aussi la recherche du trajet si elle n'est pas terminée.
+ * @author Jacob Chapman
+ * @author William McAllister
+ * @author Jean-Francois Morel
+ * @author Jean Vézina
+ * @version 1.0
+ */
+class Vehicle {
+	private Cell start;
+	private RouteCursor cursor;
+	private SearchControl search;
+	private CooperativePlanner planner;
+	private int departureTick;
+	private volatile Route route;
+	private volatile Cell currentCell;
+	private volatile boolean moving;
+
+	/**
+	 * Construit un véhicule immobile.
+	 * @param start Le noeud de départ.
+	 */
+	Vehicle(Cell start) {
+		this.start = start;
+		this.currentCell = start;
+		this.cursor = new RouteCursor();
+		this.search = new SearchControl();
+	}
+
+	/**
+	 * Assigne le trajet du véhicule et le met en mouvement.
+	 * @param route Le trajet, ou null si aucun espace n'est accessible.
+	 */
+	void setRoute(Route route) {
+		this.route = route;
+		this.cursor.reset(route);
+		this.moving = route != null;
+	}
+
+	/**
+	 * Associe le véhicule au planificateur qui a réservé son trajet. Doit précéder la remise du véhicule
+	 * au fil de simulation.
+	 * @param planner Le planificateur.
+	 * @param departureTick Le pas de temps où le véhicule est au noeud de départ.
+	 */
+	void schedule(CooperativePlanner planner, int departureTick) {
+		this.planner = planner;
+		this.departureTick = departureTick;
+	}
+
+	/**
+	 * Retourne le planificateur qui a réservé le trajet du véhicule.
+	 * @return planner Le planificateur, ou null si le trajet n'est pas planifié de façon coopérative.
+	 */
+	CooperativePlanner getPlanner() {
+		return planner;
+	}
+
+	/**
+	 * Retourne le pas de temps où le véhicule est au noeud de départ de son trajet planifié.
+	 * @return departureTick Le pas de départ.
+	 */
+	int getDepartureTick() {
+		return departureTick;
+	}
+
+	/**
+	 * Retourne le nombre de noeuds du trajet déjà atteints.
+	 * @return Le nombre de pas effectués.
+	 */
+	int getSteps() {
+		return cursor.getPosition();
+	}
+
+	/**
+	 * Avance le véhicule d'un noeud.
+	 * @return Le noeud atteint, ou null si le véhicule est arrivé ou arrêté.
+	 */
+	Cell advance() {
+		if (!moving) {
+			return null;
+		}
+		if (!cursor.hasNext()) {
+			moving = false;
+			return null;
+		}
+		currentCell = cursor.next();
+		return currentCell;
+	}
+
+	/**
+	 * Arrête le véhicule; le fil de simulation le retire au prochain pas.
+	 */
+	void stop() {
+		moving = false;
+		search.cancel();
+	}
+
+	/**
+	 * Indique si le véhicule est en mouvement.
+	 * @return Vrai tant que le véhicule n'est ni arrivé ni arrêté.
+	 */
+	boolean isMoving() {
+		return moving;
+	}
+
+	/**
+	 * Retourne le noeud de départ du véhicule.
+	 * @return start Le noeud de départ.
+	 */
+	Cell getStart() {
+		return start;
+	}
+
+	/**
+	 * Retourne le contrôle de la recherche du trajet du véhicule.
+	 * @return search Le contrôle de la recherche.
+	 */
+	SearchControl getSearch() {
+		return search;
+	}
+
+	/**
+	 * Retourne le trajet du véhicule.
+	 * @return route Le trajet, ou null s'il n'a pas encore été trouvé.
+	 */
+	Route getRoute() {
+		return route;
+	}
+
+	/**
+	 * Retourne le noeud où se trouve le véhicule.
+	 * @return currentCell Le noeud courant.
+	 */
+	Cell getCurrentCell() {
+		return currentCell;
+	}
+}